@@ -0,0 +1,47 @@
+package lehoai.csvtitan.service.parse;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * {@link StructuralScanner} built on the JDK Vector API.
+ * A 64-byte block is compared against the structural characters in 32 or 64 byte lanes,
+ * depending on the preferred vector size of the CPU, and the comparison masks become the bitmaps.
+ */
+class VectorStructuralScanner implements StructuralScanner {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private final ScalarStructuralScanner tail;
+    private final byte delimiter;
+    private final byte quote;
+
+    VectorStructuralScanner(byte delimiter, byte quote) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.tail = new ScalarStructuralScanner(delimiter, quote);
+    }
+
+    @Override
+    public void scanBlock(MemorySegment segment, long blockStart, long limit, long[] masks) {
+        int lanes = SPECIES.length();
+        if (limit - blockStart < BLOCK_SIZE || lanes > BLOCK_SIZE) {
+            tail.scanBlock(segment, blockStart, limit, masks);
+            return;
+        }
+        long fieldEnds = 0;
+        long quotes = 0;
+        for (int i = 0; i < BLOCK_SIZE; i += lanes) {
+            ByteVector v = ByteVector.fromMemorySegment(SPECIES, segment, blockStart + i, ByteOrder.nativeOrder());
+            VectorMask<Byte> ends = v.eq(delimiter).or(v.eq((byte) '\n')).or(v.eq((byte) '\r'));
+            fieldEnds |= ends.toLong() << i;
+            quotes |= v.eq(quote).toLong() << i;
+        }
+        masks[FIELD_END] = fieldEnds;
+        masks[QUOTE] = quotes;
+    }
+}
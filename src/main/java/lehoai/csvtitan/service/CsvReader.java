@@ -1,14 +1,20 @@
 package lehoai.csvtitan.service;
 
+import lehoai.csvtitan.service.core.ColumnStats;
 import lehoai.csvtitan.service.core.CsvConfig;
 import lehoai.csvtitan.service.core.Schema;
 import lehoai.csvtitan.service.core.SchemaDetector;
+import lehoai.csvtitan.service.parse.CsvTokenizer;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import lehoai.csvtitan.service.parse.RowIndex;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -24,11 +30,15 @@ public class CsvReader {
 
     private static final char STRING_QUOTE = '"';
 
-    private final CSVParser csvParser;
+    private CSVParser csvParser;
     private final CsvConfig config;
+    private final String filePath;
     private final String fileName;
     private CSVRecord firstDataLine;
     private Schema[] schemas;
+    private RowIndex rowIndex;
+    private ColumnStats[] columnStats;
+    private MetaCache metaCache;
 
     /**
      * Constructs a {@code CsvReader} with the given file path and configuration.
@@ -38,6 +48,7 @@ public class CsvReader {
      */
     public CsvReader(String filePath, CsvConfig config) throws IOException {
         this.config = config;
+        this.filePath = filePath;
         csvParser = new CSVParser(new FileReader(filePath, Charset.forName(config.encode)),
                 CSVFormat.Builder.create()
                         .setHeader()
@@ -78,7 +89,7 @@ public class CsvReader {
     }
 
     public boolean hasNext() {
-        return csvParser.iterator().hasNext();
+        return firstDataLine != null || csvParser.iterator().hasNext();
     }
 
     /**
@@ -118,15 +129,137 @@ public class CsvReader {
         return fileName;
     }
 
+    /**
+     * Builds a sparse {@link RowIndex} of the file in one pass, so that {@link #seek(long)} can jump to any row.
+     * This may take a while on large files and is meant to run in the background;
+     * it doesn't move this reader.
+     *
+     * @param parallelism number of threads to use
+     * @return the index, also kept by this reader
+     * @throws IOException if the file can't be mapped or its configuration can't be parsed at byte level
+     */
+    public RowIndex buildIndex(int parallelism) throws IOException {
+        if (rowIndex != null) {
+            return rowIndex; // Restored from the cache by readMeta
+        }
+        ColumnStats[] stats = new ColumnStats[schemas.length];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new ColumnStats();
+        }
+        try (MappedCsv mappedCsv = new MappedCsv(filePath, config)) {
+            CsvTokenizer tokenizer = mappedCsv.tokenizer();
+            tokenizer.skip(); // header
+            rowIndex = RowIndex.build(mappedCsv, tokenizer.position(), RowIndex.DEFAULT_STEP, parallelism, stats);
+        }
+        columnStats = stats;
+        if (metaCache != null) {
+            MetaCache.Entry entry = new MetaCache.Entry();
+            entry.schemas = schemas;
+            entry.rowIndex = rowIndex;
+            entry.stats = columnStats;
+            try {
+                metaCache.store(filePath, config, entry);
+            } catch (IOException _) {
+                // The cache is an optimization, the index is still usable
+            }
+        }
+        return rowIndex;
+    }
+
+    /**
+     * Uses a persistent cache: {@link #readMeta()} restores the schemas, the index and the statistics
+     * computed in a previous session, and {@link #buildIndex(int)} stores them.
+     *
+     * @param metaCache the cache, or {@code null} to disable caching
+     */
+    public void setMetaCache(MetaCache metaCache) {
+        this.metaCache = metaCache;
+    }
+
+    /**
+     * Gets the column statistics gathered by {@link #buildIndex(int)} or restored from the cache.
+     *
+     * @return the statistics, one per column, or {@code null} if the file is not indexed yet
+     */
+    public ColumnStats[] getColumnStats() {
+        return columnStats;
+    }
+
+    public RowIndex getRowIndex() {
+        return rowIndex;
+    }
+
+    public void setRowIndex(RowIndex rowIndex) {
+        this.rowIndex = rowIndex;
+    }
+
+    /**
+     * Moves the reader so that the next {@link #readLines()} starts at the given data line.
+     * The parser is reopened at the closest indexed offset, and fewer than {@link RowIndex#DEFAULT_STEP}
+     * records are skipped from there. {@link #readMeta()} and {@link #buildIndex(int)} must have been called.
+     *
+     * @param row 0-based number of the data line
+     * @throws IOException if an I/O error occurs while reopening the file
+     */
+    public void seek(long row) throws IOException {
+        if (rowIndex == null) {
+            throw new IllegalStateException("No row index, call buildIndex first");
+        }
+        long target = Math.max(0, Math.min(row, rowIndex.getRowCount()));
+        firstDataLine = null;
+        csvParser.close();
+        if (rowIndex.getRowCount() == 0) {
+            return;
+        }
+        int checkpoint = rowIndex.checkpointBefore(target);
+        FileInputStream in = new FileInputStream(filePath);
+        in.getChannel().position(rowIndex.getOffsets()[checkpoint]);
+        csvParser = new CSVParser(new InputStreamReader(in, Charset.forName(config.encode)),
+                CSVFormat.Builder.create()
+                        .setHeader(getRawHeader().toArray(new String[0]))
+                        .setSkipHeaderRecord(false)
+                        .setDelimiter(config.delimiter)
+                        .setQuote(STRING_QUOTE)
+                        .build()
+        );
+        for (long i = rowIndex.getRows()[checkpoint]; i < target && csvParser.iterator().hasNext(); i++) {
+            csvParser.iterator().next();
+        }
+    }
+
+    /**
+     * Moves the reader so that the next {@link #readLines()} returns the last {@code bufferedLines} rows.
+     *
+     * @return the 0-based number of the first row of the page
+     * @throws IOException if an I/O error occurs while reopening the file
+     */
+    public long seekLastPage() throws IOException {
+        if (rowIndex == null) {
+            throw new IllegalStateException("No row index, call buildIndex first");
+        }
+        long start = rowIndex.lastPageStart(config.bufferedLines);
+        seek(start);
+        return start;
+    }
+
     /**
      * Reads the metadata from the CSV file, including column headers and the first line of data,
      * to infer the schema (column names and data types).
      */
     public void readMeta() {
         List<String> headers = csvParser.getHeaderNames();
-        schemas = new Schema[headers.size()];
         firstDataLine = csvParser.iterator().next();
 
+        MetaCache.Entry entry = metaCache != null ? metaCache.load(filePath, config) : null;
+        if (entry != null && Arrays.stream(entry.schemas).map(s -> s.name).toList().equals(headers)) {
+            schemas = entry.schemas;
+            rowIndex = entry.rowIndex;
+            columnStats = entry.stats;
+            return;
+        }
+
+        schemas = new Schema[headers.size()];
+
         SchemaDetector sd = new SchemaDetector();
 
         for (int i = 0; i < schemas.length; i++) {
@@ -1,26 +1,98 @@
 package lehoai.csvtitan.service;
 
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.dedup.DedupOptions;
+import lehoai.csvtitan.service.dedup.Deduplicator;
+import lehoai.csvtitan.service.parse.CsvRow;
+import lehoai.csvtitan.service.parse.CsvTokenizer;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
 import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
- * A utility class for merging two large CSV files into one.
- * This class improves performance by handling files at the byte level rather than reading line by line,
- * while ensuring that headers are managed correctly.
+ * A utility class for merging large CSV files into one.
+ * The columns of the output are those of the first file, followed by the columns that only other files have
+ * (see {@link UnionOptions#dropExtraColumns}), and it is written with the delimiter and encoding of the first file.
+ * <p>
+ * An input with exactly the output columns, delimiter and encoding is copied as bytes: when the encoding is
+ * ASCII compatible (see {@link MappedCsv#supports(CsvConfig)}), the end of its header is found by the quote-aware
+ * byte tokenizer, after the byte order mark if there is one, and its body is copied from file to file with
+ * {@link FileChannel#transferTo}, so its bytes never go through the heap. Other encodings are copied as characters.
+ * Only the inputs that differ are parsed and projected onto the output columns, row by row: columns are reordered,
+ * missing ones are left empty and extra ones are appended or dropped.
+ * A line break is added after a file that does not end with one, so its last row is not joined to the next file.
  */
 public class CsvUnion {
 
+    private static final String CRLF = "\r\n";
+    private static final char QUOTE = (char) MappedCsv.QUOTE;
+
     /**
      * The character encoding to use when reading and writing the CSV files.
      */
     private final String encode;
 
+    /**
+     * What is known of an input before copying it.
+     *
+     * @param file          the input file
+     * @param config        how the file is read
+     * @param mapped        whether the file is read at byte level
+     * @param header        the column names
+     * @param headerEnd     offset after the header and its line break, for a mapped file
+     * @param size          size of the file in bytes
+     * @param endsWithBreak whether the file ends with a line break, for a mapped file
+     * @param lineBreak     the line break ending the header, CRLF if it has none
+     */
+    private record Input(Path file, CsvConfig config, boolean mapped, List<String> header, long headerEnd, long size,
+                         boolean endsWithBreak, String lineBreak) {
+    }
+
+    /**
+     * An input to write: a byte range to copy, or rows to project when {@code mapping} is set.
+     *
+     * @param input     the input
+     * @param from      offset of the first byte to copy
+     * @param to        offset after the last byte to copy
+     * @param lineBreak whether a line break is written after the copied bytes
+     * @param mapping   for every output column, the input column or -1, {@code null} to copy the input
+     */
+    private record Part(Input input, long from, long to, boolean lineBreak, int[] mapping) {
+    }
+
     /**
      * Constructs a new {@code CsvUnion} instance with the specified character encoding.
      *
@@ -31,68 +103,436 @@ public class CsvUnion {
     }
 
     /**
-     * Merges two CSV files into one output file.
+     * Merges two CSV files with the same header into one output file.
      * The header from the first file is included, while the header from the second file is skipped.
      *
      * @param file1   the path to the first CSV file
      * @param file2   the path to the second CSV file
      * @param outfile the path to the output file
-     * @throws IOException if an I/O error occurs during file processing
+     * @throws IOException              if an I/O error occurs during file processing
+     * @throws IllegalArgumentException if the headers differ, see {@link #union(List, String, UnionOptions)}
      */
     public void union(String file1, String file2, String outfile) throws IOException {
-        FileInputStream fis1 = new FileInputStream(file1);
-        FileInputStream fis2 = new FileInputStream(file2);
-        FileOutputStream fos = new FileOutputStream(outfile);
+        union(List.of(file1, file2), outfile, new UnionOptions());
+    }
+
+    /**
+     * Merges CSV files with the same header into one output file, one after the other.
+     *
+     * @param files   the paths to the CSV files, in output order
+     * @param outfile the path to the output file
+     * @throws IOException              if an I/O error occurs during file processing
+     * @throws IllegalArgumentException if the headers differ, see {@link #union(List, String, UnionOptions)}
+     */
+    public void union(List<String> files, String outfile) throws IOException {
+        union(files, outfile, new UnionOptions());
+    }
+
+    /**
+     * Merges files in the encoding of this instance into one output file.
+     * The delimiter of the files is not known, so they are copied as they are: their headers must be the same,
+     * and duplicate rows can't be removed. Use {@link #union(List, List, String, UnionOptions)} to align
+     * columns or remove duplicates.
+     *
+     * @param files   the paths to the CSV files, in output order
+     * @param outfile the path to the output file
+     * @param options how the files are copied
+     * @throws IOException              if an I/O error occurs during file processing
+     * @throws IllegalArgumentException if the headers differ or {@link UnionOptions#distinct} is set
+     */
+    public void union(List<String> files, String outfile, UnionOptions options) throws IOException {
+        if (options.distinct) {
+            throw new IllegalArgumentException("Removing duplicate rows needs the delimiter of the files");
+        }
+        CsvConfig config = new CsvConfig();
+        config.encode = encode;
+        union(files, Collections.nCopies(files.size(), config), outfile, options, false);
+    }
+
+    /**
+     * Merges CSV files into one output file, written with the configuration of the first file.
+     * The header from the first file is included, while the headers from the other files are skipped.
+     *
+     * @param files   the paths to the CSV files, in output order
+     * @param configs how every file is read
+     * @param outfile the path to the output file
+     * @param options how the files are copied and whether duplicate rows are removed
+     * @throws IOException if an I/O error occurs during file processing
+     */
+    public void union(List<String> files, List<CsvConfig> configs, String outfile, UnionOptions options) throws IOException {
+        union(files, configs, outfile, options, true);
+    }
+
+    /**
+     * Merges CSV files into one output file.
+     *
+     * @param canProject whether the configurations are those of the files, so inputs can be parsed and projected
+     */
+    private void union(List<String> files, List<CsvConfig> configs, String outfile, UnionOptions options,
+                       boolean canProject) throws IOException {
+        if (files.isEmpty() || files.size() != configs.size()) {
+            throw new IllegalArgumentException("Expected one configuration per file, got " + files.size() + " files and "
+                    + configs.size() + " configurations");
+        }
+        List<Input> inputs = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            inputs.add(scan(Paths.get(files.get(i)), configs.get(i)));
+        }
+        Input first = inputs.getFirst();
+        List<String> columns = new ArrayList<>(first.header());
+        if (!options.dropExtraColumns) {
+            for (Input input : inputs) {
+                appendExtraColumns(columns, input.header());
+            }
+        }
+
+        List<Part> parts = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            Input input = inputs.get(i);
+            if (!isCopied(input, first.config(), columns)) {
+                if (!canProject) {
+                    throw new IllegalArgumentException("The header of " + input.file() + " differs from the output columns "
+                            + columns + ", give the configuration of every file to align them");
+                }
+                parts.add(new Part(input, 0, 0, false, mapping(input.header(), columns)));
+            } else if (i == 0 || input.headerEnd() < input.size()) {
+                long from = i == 0 ? 0 : input.headerEnd();
+                parts.add(new Part(input, from, input.size(), !input.endsWithBreak(), null));
+            }
+        }
+        Part last = parts.getLast();
+        if (last.lineBreak()) {
+            // Nothing follows the last part.
+            parts.set(parts.size() - 1, new Part(last.input(), last.from(), last.to(), false, null));
+        }
+
+        CSVFormat format = CSVFormat.Builder.create()
+                .setDelimiter(first.config().delimiter)
+                .setQuote(QUOTE)
+                .setRecordSeparator(first.lineBreak())
+                .build();
+        Charset charset = Charset.forName(first.config().encode);
+        // Duplicates are removed from a temporary union, which is then deduplicated into the output.
+        Path target = options.distinct ? Files.createTempFile("union_", ".csv") : Paths.get(outfile);
+        try {
+            if (first.mapped()) {
+                writeBytes(parts, columns, format, charset, target, options);
+            } else {
+                writeChars(parts, columns, format, charset, target);
+            }
+            if (options.distinct) {
+                new Deduplicator().dedup(target.toString(), first.config(), outfile, new DedupOptions());
+            }
+        } finally {
+            if (options.distinct) {
+                Files.deleteIfExists(target);
+            }
+        }
+    }
+
+    /**
+     * Reads the header of an input.
+     */
+    private static Input scan(Path file, CsvConfig config) throws IOException {
+        if (MappedCsv.supports(config)) {
+            try (MappedCsv csv = new MappedCsv(file.toString(), config)) {
+                CsvTokenizer tokenizer = csv.tokenizer();
+                CsvRow row = csv.newRow();
+                List<String> header = tokenizer.next(row) ? row.toList() : List.of();
+                long headerEnd = tokenizer.position();
+                byte last = csv.size() > 0 ? csv.segment().get(ValueLayout.JAVA_BYTE, csv.size() - 1) : (byte) '\n';
+                return new Input(file, config, true, header, headerEnd, csv.size(), last == '\n' || last == '\r',
+                        lineBreakBefore(csv.segment(), headerEnd));
+            }
+        }
+        try (BufferedReader in = openReader(file, config)) {
+            String line = readHeader(in);
+            List<String> header = List.of();
+            try (CSVParser parser = format(config).parse(new StringReader(line))) {
+                for (CSVRecord record : parser) {
+                    header = record.toList();
+                    break;
+                }
+            }
+            String lineBreak = line.endsWith(CRLF) ? CRLF
+                    : line.endsWith("\n") || line.endsWith("\r") ? line.substring(line.length() - 1) : CRLF;
+            return new Input(file, config, false, header, -1, Files.size(file), false, lineBreak);
+        }
+    }
 
-        // Read the first file and include its header
-        copyStream(fis1, fos);
-        // write new line
-        fos.write(System.lineSeparator().getBytes(this.encode));
+    /**
+     * Writes an output whose encoding is ASCII compatible: copied inputs go from file to file,
+     * on several threads if {@link UnionOptions#parallelism} allows it and no input is projected.
+     */
+    private static void writeBytes(List<Part> parts, List<String> columns, CSVFormat format, Charset charset,
+                                   Path outfile, UnionOptions options) throws IOException {
+        byte[] lineBreak = format.getRecordSeparator().getBytes(charset);
+        try (FileChannel out = FileChannel.open(outfile, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (options.parallelism > 1 && parts.size() > 1 && parts.stream().allMatch(p -> p.mapping() == null)) {
+                copyParallel(parts, lineBreak, out, options.parallelism);
+                return;
+            }
+            // Projected rows are encoded through a writer that is flushed, never closed, before the next copy.
+            Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(out), charset));
+            CSVPrinter printer = new CSVPrinter(writer, format);
+            for (int i = 0; i < parts.size(); i++) {
+                Part part = parts.get(i);
+                if (part.mapping() != null) {
+                    if (i == 0) {
+                        printer.printRecord(columns);
+                    }
+                    project(part, printer);
+                    printer.flush();
+                    continue;
+                }
+                try (FileChannel in = FileChannel.open(part.input().file(), StandardOpenOption.READ)) {
+                    for (long position = part.from(); position < part.to(); ) {
+                        position += in.transferTo(position, part.to() - position, out);
+                    }
+                }
+                if (part.lineBreak()) {
+                    out.write(ByteBuffer.wrap(lineBreak));
+                }
+            }
+        }
+    }
 
-        // Read the second file and skip its header
-        BufferedReader br = new BufferedReader(new InputStreamReader(fis2, Charset.forName(this.encode)));
-        String header = br.readLine(); // Read and discard the header
-        br.close();
-        fis2.close();
+    /**
+     * Sizes the output, then copies every part at its offset on a pool of threads.
+     */
+    private static void copyParallel(List<Part> parts, byte[] lineBreak, FileChannel out, int parallelism) throws IOException {
+        long[] offsets = new long[parts.size()];
+        long size = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            offsets[i] = size;
+            size += parts.get(i).to() - parts.get(i).from() + (parts.get(i).lineBreak() ? lineBreak.length : 0);
+        }
+        if (size > 0) {
+            out.write(ByteBuffer.allocate(1), size - 1);
+        }
 
-        if (header != null) {
-            fis2 = new FileInputStream(file2);
-            int headerLength = header.getBytes(this.encode).length + System.lineSeparator().getBytes(this.encode).length;
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, parts.size()), r -> {
+            Thread thread = new Thread(r, "union-copy");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> copies = new ArrayList<>();
+            for (int i = 0; i < parts.size(); i++) {
+                Part part = parts.get(i);
+                long offset = offsets[i];
+                copies.add(workers.submit(() -> {
+                    long count = part.to() - part.from();
+                    try (FileChannel in = FileChannel.open(part.input().file(), StandardOpenOption.READ)) {
+                        in.position(part.from());
+                        for (long done = 0; done < count; ) {
+                            done += out.transferFrom(in, offset + done, count - done);
+                        }
+                    }
+                    if (part.lineBreak()) {
+                        out.write(ByteBuffer.wrap(lineBreak), offset + count);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> copy : copies) {
+                copy.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Union interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-            // Skip the header in the second file
-            if (fis2.skip(headerLength) != headerLength) {
-                throw new IOException("Skipping header " + header + " of " + headerLength + " bytes failed");
+    /**
+     * Writes an output whose encoding is not ASCII compatible, such as UTF-16, as characters.
+     * The byte order marks of the inputs are dropped; the writer adds one if the encoding needs it.
+     */
+    private static void writeChars(List<Part> parts, List<String> columns, CSVFormat format, Charset charset,
+                                   Path outfile) throws IOException {
+        String lineBreak = format.getRecordSeparator();
+        boolean needsLineBreak = false;
+        char[] buffer = new char[8192];
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(outfile), charset))) {
+            CSVPrinter printer = new CSVPrinter(out, format);
+            for (int i = 0; i < parts.size(); i++) {
+                Part part = parts.get(i);
+                if (part.mapping() != null) {
+                    if (i == 0) {
+                        printer.printRecord(columns);
+                    }
+                    if (needsLineBreak) {
+                        out.write(lineBreak);
+                        needsLineBreak = false;
+                    }
+                    project(part, printer);
+                    continue;
+                }
+                try (BufferedReader in = openReader(part.input().file(), part.input().config())) {
+                    String header = readHeader(in);
+                    if (i == 0) {
+                        out.write(header);
+                        needsLineBreak = !header.isEmpty() && !header.endsWith("\n") && !header.endsWith("\r");
+                    }
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        if (needsLineBreak) {
+                            out.write(lineBreak);
+                        }
+                        out.write(buffer, 0, read);
+                        needsLineBreak = buffer[read - 1] != '\n' && buffer[read - 1] != '\r';
+                    }
+                }
             }
-            copyStream(fis2, fos);
+            printer.flush();
         }
+    }
 
-        // Flush and close resources
-        fos.flush();
-        fis1.close();
-        fis2.close();
+    /**
+     * Writes the rows of an input in the output columns.
+     */
+    private static void project(Part part, CSVPrinter printer) throws IOException {
+        Input input = part.input();
+        int[] mapping = part.mapping();
+        String[] values = new String[mapping.length];
+        if (input.mapped()) {
+            try (MappedCsv csv = new MappedCsv(input.file().toString(), input.config())) {
+                CsvTokenizer tokenizer = csv.tokenizer(input.headerEnd(), csv.size());
+                CsvRow row = csv.newRow();
+                while (tokenizer.next(row)) {
+                    for (int j = 0; j < mapping.length; j++) {
+                        values[j] = mapping[j] >= 0 && mapping[j] < row.size() ? row.get(mapping[j]) : "";
+                    }
+                    printer.printRecord((Object[]) values);
+                }
+            }
+            return;
+        }
+        try (BufferedReader in = openReader(input.file(), input.config())) {
+            readHeader(in);
+            for (CSVRecord record : format(input.config()).parse(in)) {
+                for (int j = 0; j < mapping.length; j++) {
+                    values[j] = mapping[j] >= 0 && mapping[j] < record.size() ? record.get(mapping[j]) : "";
+                }
+                printer.printRecord((Object[]) values);
+            }
+        }
     }
 
     /**
-     * Copies the contents of an input stream to an output stream in chunks for performance.
-     * Flushes the output periodically to ensure smooth processing for large files.
+     * Checks whether an input can be copied as it is: same columns, delimiter and encoding as the output.
+     */
+    private static boolean isCopied(Input input, CsvConfig output, List<String> columns) {
+        return input.header().equals(columns)
+                && input.config().delimiter.equals(output.delimiter)
+                && Charset.forName(input.config().encode).equals(Charset.forName(output.encode));
+    }
+
+    /**
+     * Appends the columns of a header that are not in the output columns yet.
+     * A name repeated in a header is matched occurrence by occurrence.
+     */
+    private static void appendExtraColumns(List<String> columns, List<String> header) {
+        Map<String, Integer> available = new HashMap<>();
+        for (String column : columns) {
+            available.merge(column, 1, Integer::sum);
+        }
+        for (String name : header) {
+            if (available.merge(name, -1, Integer::sum) < 0) {
+                columns.add(name);
+                available.put(name, 0);
+            }
+        }
+    }
+
+    /**
+     * Maps every output column to the input column with the same name, occurrence by occurrence.
      *
-     * @param is the input stream to read from
-     * @param os the output stream to write to
-     * @throws IOException if an I/O error occurs during the copy
+     * @return for every output column, the index of the input column or -1
      */
-    private void copyStream(InputStream is, OutputStream os) throws IOException {
-        byte[] buffer = new byte[8192]; // 8 KB buffer for efficient transfer
-        int bytesRead;
-        int step = 0;
+    private static int[] mapping(List<String> header, List<String> columns) {
+        Map<String, ArrayDeque<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            positions.computeIfAbsent(header.get(i), _ -> new ArrayDeque<>()).add(i);
+        }
+        int[] mapping = new int[columns.size()];
+        Arrays.fill(mapping, -1);
+        for (int j = 0; j < columns.size(); j++) {
+            ArrayDeque<Integer> found = positions.get(columns.get(j));
+            if (found != null && !found.isEmpty()) {
+                mapping[j] = found.poll();
+            }
+        }
+        return mapping;
+    }
+
+    private static CSVFormat format(CsvConfig config) {
+        return CSVFormat.Builder.create().setDelimiter(config.delimiter).setQuote(QUOTE).build();
+    }
 
-        while ((bytesRead = is.read(buffer)) != -1) {
-            os.write(buffer, 0, bytesRead);
-            step++;
+    /**
+     * Opens a file as characters, after its byte order mark.
+     */
+    private static BufferedReader openReader(Path file, CsvConfig config) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(Files.newInputStream(file), Charset.forName(config.encode)));
+        in.mark(1);
+        if (in.read() != '\uFEFF') {
+            in.reset();
+        }
+        return in;
+    }
 
-            // Flush periodically to avoid large memory usage
-            if (step == 100) {
-                os.flush();
+    /**
+     * Reads the first record of a file with its line break, which ends at the first CR, LF or CRLF outside quotes.
+     *
+     * @param in the file content, after the byte order mark
+     * @return the header and its line break, empty for an empty file
+     */
+    private static String readHeader(BufferedReader in) throws IOException {
+        StringBuilder header = new StringBuilder();
+        boolean quoted = false;
+        int c;
+        while ((c = in.read()) >= 0) {
+            header.append((char) c);
+            if (c == QUOTE) {
+                quoted = !quoted;
+            } else if (!quoted && c == '\n') {
+                break;
+            } else if (!quoted && c == '\r') {
+                in.mark(1);
+                if (in.read() == '\n') {
+                    header.append('\n');
+                } else {
+                    in.reset();
+                }
+                break;
             }
         }
+        return header.toString();
+    }
+
+    /**
+     * Finds the line break ending the header, to separate files that don't end with one the same way.
+     *
+     * @param segment   the mapped file
+     * @param headerEnd offset after the header and its line break
+     * @return the line break, CRLF if the header has none
+     */
+    private static String lineBreakBefore(MemorySegment segment, long headerEnd) {
+        byte last = headerEnd > 0 ? segment.get(ValueLayout.JAVA_BYTE, headerEnd - 1) : 0;
+        if (last == '\n') {
+            return headerEnd > 1 && segment.get(ValueLayout.JAVA_BYTE, headerEnd - 2) == '\r' ? CRLF : "\n";
+        }
+        return last == '\r' ? "\r" : CRLF;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,169 @@
+package lehoai.csvtitan.service;
+
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.core.Schema;
+import lehoai.csvtitan.service.core.SchemaDetector;
+import lehoai.csvtitan.service.parse.CsvRow;
+import lehoai.csvtitan.service.parse.CsvTokenizer;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import lehoai.csvtitan.service.parse.ParallelCsvScanner;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Memory-mapped alternative to {@link CsvReader}.
+ * The file is tokenized at byte level and rows are returned as {@link CsvRow} views holding field
+ * offsets into the mapped region, so a field is only decoded to a {@link String} when it is asked for.
+ * Requires a single-byte delimiter and an ASCII compatible encoding, see {@link MappedCsv#supports(CsvConfig)}.
+ */
+public class MappedCsvReader {
+
+    private final MappedCsv mappedCsv;
+    private final CsvTokenizer tokenizer;
+    private final CsvRow row;
+    private final CsvConfig config;
+    private final String fileName;
+    private Schema[] schemas;
+    private long dataStart;
+
+    /**
+     * Constructs a {@code MappedCsvReader} with the given file path and configuration.
+     *
+     * @param filePath path to the CSV file
+     * @param config   the configuration for reading the CSV file
+     * @throws IOException if the file can't be mapped or the configuration is not supported
+     */
+    public MappedCsvReader(String filePath, CsvConfig config) throws IOException {
+        this.config = config;
+        this.mappedCsv = new MappedCsv(filePath, config);
+        this.tokenizer = mappedCsv.tokenizer();
+        this.row = mappedCsv.newRow();
+        Path path = Paths.get(filePath);
+        fileName = path.getFileName().toString();
+    }
+
+    /**
+     * Reads a batch of rows based on the buffer size in the configuration.
+     * Every returned row is an independent view, but none of them decodes its fields.
+     *
+     * @return a list of rows, empty at the end of the file
+     */
+    public List<CsvRow> readLines() {
+        List<CsvRow> result = new ArrayList<>(this.config.bufferedLines);
+        while (result.size() < this.config.bufferedLines) {
+            CsvRow next = mappedCsv.newRow();
+            if (!tokenizer.next(next)) {
+                break;
+            }
+            result.add(next);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the next row into a view that is reused by the following call.
+     *
+     * @return the next row, or {@code null} at the end of the file
+     */
+    public CsvRow readLine() {
+        return tokenizer.next(row) ? row : null;
+    }
+
+    public boolean hasNext() {
+        return tokenizer.hasNext();
+    }
+
+    /**
+     * Unmaps the file. Rows read from this reader must not be used afterwards.
+     */
+    public void close() {
+        mappedCsv.close();
+    }
+
+    /**
+     * Gets the schema of the CSV file, including column names and data types.
+     *
+     * @return an array of {@link Schema} objects representing the column metadata
+     */
+    public Schema[] getSchemas() {
+        return schemas;
+    }
+
+    /**
+     * Return raw header as String
+     *
+     * @return raw header
+     */
+    public List<String> getRawHeader() {
+        return Arrays.stream(schemas).map(s -> s.name).toList();
+    }
+
+    public CsvConfig getConfig() {
+        return config;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the mapped file backing this reader
+     */
+    public MappedCsv getMappedCsv() {
+        return mappedCsv;
+    }
+
+    /**
+     * @return offset of the first data line, once {@link #readMeta()} has been called
+     */
+    public long getDataStart() {
+        return dataStart;
+    }
+
+    /**
+     * Creates a scanner that parses the data lines of the file concurrently.
+     * {@link #readMeta()} must be called first so that the header is skipped.
+     *
+     * @param parallelism number of threads to use
+     * @return a new parallel scanner
+     */
+    public ParallelCsvScanner parallelScanner(int parallelism) {
+        return new ParallelCsvScanner(mappedCsv, dataStart, parallelism);
+    }
+
+    /**
+     * Moves the reader back to the first data line, once {@link #readMeta()} has been called.
+     */
+    public void rewind() {
+        tokenizer.position(dataStart);
+    }
+
+    /**
+     * Reads the metadata from the CSV file, including column headers and the first line of data,
+     * to infer the schema (column names and data types).
+     * The reader is left positioned on the first data line.
+     */
+    public void readMeta() {
+        if (!tokenizer.next(row)) {
+            throw new IllegalStateException("No header found in " + fileName);
+        }
+        List<String> headers = row.toList();
+        schemas = new Schema[headers.size()];
+        dataStart = tokenizer.position();
+        boolean hasData = tokenizer.next(row);
+
+        SchemaDetector sd = new SchemaDetector();
+
+        for (int i = 0; i < schemas.length; i++) {
+            schemas[i] = new Schema();
+            schemas[i].name = headers.get(i);
+            schemas[i].type = sd.detectType(hasData && i < row.size() ? row.get(i) : "");
+        }
+        tokenizer.position(dataStart);
+    }
+}
@@ -0,0 +1,288 @@
+package lehoai.csvtitan.service;
+
+import lehoai.csvtitan.service.core.ColumnStats;
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.core.Schema;
+import lehoai.csvtitan.service.core.Type;
+import lehoai.csvtitan.service.parse.RowIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent cache of what has been computed for a CSV file: the row index, the row count,
+ * the detected schemas and the column statistics.
+ * <p>
+ * Every file gets a compact binary sidecar in the cache directory, named after the file path and the
+ * parsing configuration. An entry is only reused when the file still has the same size, modification time
+ * and, optionally, the same checksum of its first and last 64 KB. The directory is kept under a size limit by
+ * deleting the least recently used entries.
+ */
+public class MetaCache {
+
+    /**
+     * Default size limit of the cache directory.
+     */
+    public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+    private static final int MAGIC = 0x43535449; // "CSTI"
+    private static final int VERSION = 2;
+    private static final int HASHED_BYTES = 64 * 1024;
+    private static final String EXTENSION = ".meta";
+
+    private static MetaCache defaultCache;
+
+    private final Path directory;
+    private final long maxSize;
+    private final boolean verifyContent;
+
+    /**
+     * What is cached for a file.
+     */
+    public static class Entry {
+        public Schema[] schemas;
+        public RowIndex rowIndex;
+        public ColumnStats[] stats;
+    }
+
+    /**
+     * Constructs a cache.
+     *
+     * @param directory     directory holding the sidecar files
+     * @param maxSize       size limit of the directory, in bytes
+     * @param verifyContent whether to also compare a checksum of the start and the end of the file
+     */
+    public MetaCache(Path directory, long maxSize, boolean verifyContent) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.verifyContent = verifyContent;
+    }
+
+    /**
+     * Gets the application cache, stored in {@code ~/.csvtitan/cache}.
+     *
+     * @return the shared cache
+     */
+    public static synchronized MetaCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new MetaCache(Paths.get(System.getProperty("user.home"), ".csvtitan", "cache"),
+                    DEFAULT_MAX_SIZE, true);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Loads the entry of a file.
+     *
+     * @param filePath path to the CSV file
+     * @param config   the configuration used to read it
+     * @return the cached entry, or {@code null} if there is none or the file has changed
+     */
+    public Entry load(String filePath, CsvConfig config) {
+        Path sidecar = sidecarOf(filePath, config);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            Path file = Paths.get(filePath);
+            if (in.readLong() != Files.size(file)
+                    || in.readLong() != Files.getLastModifiedTime(file).toMillis()) {
+                return null;
+            }
+            long hash = in.readLong();
+            if (verifyContent && hash != contentHash(file)) {
+                return null;
+            }
+
+            Entry entry = new Entry();
+            int columns = in.readInt();
+            entry.schemas = new Schema[columns];
+            entry.stats = new ColumnStats[columns];
+            for (int i = 0; i < columns; i++) {
+                entry.schemas[i] = new Schema();
+                entry.schemas[i].name = in.readUTF();
+                entry.schemas[i].type = Type.values()[in.readByte()];
+                entry.stats[i] = new ColumnStats();
+                entry.stats[i].emptyCount = readVarLong(in);
+                entry.stats[i].minLength = (int) readVarLong(in);
+                entry.stats[i].maxLength = (int) readVarLong(in);
+            }
+
+            long rowCount = in.readLong();
+            int checkpoints = in.readInt();
+            long[] rows = new long[checkpoints];
+            long[] offsets = new long[checkpoints];
+            long row = 0;
+            long offset = 0;
+            for (int i = 0; i < checkpoints; i++) {
+                row += readVarLong(in);
+                offset += readVarLong(in);
+                rows[i] = row;
+                offsets[i] = offset;
+            }
+            entry.rowIndex = new RowIndex(rows, offsets, rowCount);
+
+            Files.setLastModifiedTime(sidecar, FileTime.fromMillis(System.currentTimeMillis()));
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the entry of a file, then evicts old entries if the cache is over its size limit.
+     *
+     * @param filePath path to the CSV file
+     * @param config   the configuration used to read it
+     * @param entry    what has been computed for the file
+     * @throws IOException if the sidecar can't be written
+     */
+    public void store(String filePath, CsvConfig config, Entry entry) throws IOException {
+        Files.createDirectories(directory);
+        Path sidecar = sidecarOf(filePath, config);
+        Path tmp = Files.createTempFile(directory, "entry_", ".tmp");
+        Path file = Paths.get(filePath);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(Files.size(file));
+            out.writeLong(Files.getLastModifiedTime(file).toMillis());
+            out.writeLong(verifyContent ? contentHash(file) : 0);
+
+            out.writeInt(entry.schemas.length);
+            for (int i = 0; i < entry.schemas.length; i++) {
+                out.writeUTF(entry.schemas[i].name);
+                out.writeByte(entry.schemas[i].type.ordinal());
+                ColumnStats stats = entry.stats != null ? entry.stats[i] : new ColumnStats();
+                writeVarLong(out, stats.emptyCount);
+                writeVarLong(out, stats.minLength);
+                writeVarLong(out, stats.maxLength);
+            }
+
+            // Checkpoints are ascending, so they are stored as variable-length deltas.
+            long[] rows = entry.rowIndex.getRows();
+            long[] offsets = entry.rowIndex.getOffsets();
+            out.writeLong(entry.rowIndex.getRowCount());
+            out.writeInt(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                writeVarLong(out, rows[i] - (i == 0 ? 0 : rows[i - 1]));
+                writeVarLong(out, offsets[i] - (i == 0 ? 0 : offsets[i - 1]));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the directory fits its size limit.
+     *
+     * @throws IOException if the directory can't be listed
+     */
+    public void evict() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(directory)) {
+            entries = new ArrayList<>(files.filter(f -> f.getFileName().toString().endsWith(EXTENSION)).toList());
+        }
+        entries.sort(Comparator.comparing(MetaCache::lastModified));
+        long total = 0;
+        for (Path entry : entries) {
+            total += sizeOf(entry);
+        }
+        for (Path entry : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+            total -= sizeOf(entry);
+            Files.deleteIfExists(entry);
+        }
+    }
+
+    private Path sidecarOf(String filePath, CsvConfig config) {
+        String key = Paths.get(filePath).toAbsolutePath().normalize() + "|" + config.encode + "|" + config.delimiter;
+        return directory.resolve(UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + EXTENSION);
+    }
+
+    private static long contentHash(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[HASHED_BYTES];
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            long length = raf.length();
+            int head = (int) Math.min(HASHED_BYTES, length);
+            raf.readFully(buffer, 0, head);
+            crc.update(buffer, 0, head);
+            if (length > HASHED_BYTES) {
+                int tail = (int) Math.min(HASHED_BYTES, length - HASHED_BYTES);
+                raf.seek(length - tail);
+                raf.readFully(buffer, 0, tail);
+                crc.update(buffer, 0, tail);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated cache entry");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed cache entry");
+    }
+}
@@ -0,0 +1,202 @@
+package lehoai.csvtitan.service;
+
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.parse.CsvRow;
+import lehoai.csvtitan.service.parse.CsvTokenizer;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import lehoai.csvtitan.service.parse.RowIndex;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Random access to the rows of an indexed CSV file, page by page.
+ * Pages are tokenized on demand from the closest {@link RowIndex} checkpoint and kept in a bounded LRU cache,
+ * so memory stays flat whatever the size of the file. When the rows are read forward or backward,
+ * the next pages in that direction are loaded ahead on a background thread.
+ */
+public class PagedRowSource implements AutoCloseable {
+
+    /**
+     * Number of rows in a page.
+     */
+    public static final int PAGE_SIZE = 500;
+
+    /**
+     * Default number of pages kept in memory.
+     */
+    public static final int DEFAULT_MAX_PAGES = 32;
+
+    private static final int READ_AHEAD_PAGES = 2;
+
+    private final MappedCsv mappedCsv;
+    private final RowIndex rowIndex;
+    private final Map<Long, Page> pages;
+    private final Set<Long> loading = ConcurrentHashMap.newKeySet();
+    private final ExecutorService readAhead = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "page-read-ahead");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long lastPage = -1;
+
+    /**
+     * Rows of a page; fields are decoded the first time a row is asked for.
+     */
+    private static class Page {
+        private final CsvRow[] rows;
+        private final List<?>[] decoded;
+
+        private Page(CsvRow[] rows) {
+            this.rows = rows;
+            this.decoded = new List<?>[rows.length];
+        }
+    }
+
+    /**
+     * Constructs a paged source.
+     *
+     * @param filePath path to the CSV file
+     * @param config   the configuration for reading the CSV file
+     * @param rowIndex the index of the file, see {@link CsvReader#buildIndex(int)}
+     * @param maxPages number of pages kept in memory
+     * @throws IOException if the file can't be mapped
+     */
+    public PagedRowSource(String filePath, CsvConfig config, RowIndex rowIndex, int maxPages) throws IOException {
+        this.mappedCsv = new MappedCsv(filePath, config);
+        this.rowIndex = rowIndex;
+        this.pages = new LinkedHashMap<>(maxPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Page> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * @return the number of data lines
+     */
+    public long size() {
+        return rowIndex.getRowCount();
+    }
+
+    /**
+     * Computes the first row of the last screen of the file, see {@link RowIndex#lastPageStart(int)}.
+     *
+     * @param visibleRows number of rows shown at once
+     * @return the 0-based number of the first row to show
+     */
+    public long lastPageStart(int visibleRows) {
+        return rowIndex.lastPageStart(visibleRows);
+    }
+
+    /**
+     * Gets the values of a row, loading its page if it is not cached.
+     *
+     * @param row 0-based number of the data line
+     * @return the decoded values
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> get(long row) {
+        long pageNumber = row / PAGE_SIZE;
+        Page page = page(pageNumber);
+        int i = (int) (row % PAGE_SIZE);
+        if (i >= page.rows.length) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + size());
+        }
+        synchronized (page) {
+            if (page.decoded[i] == null) {
+                page.decoded[i] = page.rows[i].toList();
+            }
+            return (List<String>) page.decoded[i];
+        }
+    }
+
+    /**
+     * Stops the read-ahead thread and unmaps the file.
+     */
+    @Override
+    public void close() {
+        readAhead.shutdownNow();
+        try {
+            readAhead.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+        mappedCsv.close();
+    }
+
+    private Page page(long pageNumber) {
+        Page page;
+        long previous;
+        synchronized (pages) {
+            page = pages.get(pageNumber);
+            previous = lastPage;
+            lastPage = pageNumber;
+        }
+        if (page == null) {
+            page = load(pageNumber);
+        }
+        if (pageNumber != previous && previous >= 0) {
+            prefetch(pageNumber, pageNumber > previous ? 1 : -1);
+        }
+        return page;
+    }
+
+    private void prefetch(long pageNumber, int direction) {
+        long lastPageNumber = (size() - 1) / PAGE_SIZE;
+        for (int i = 1; i <= READ_AHEAD_PAGES; i++) {
+            long next = pageNumber + (long) i * direction;
+            if (next < 0 || next > lastPageNumber) {
+                return;
+            }
+            boolean cached;
+            synchronized (pages) {
+                cached = pages.containsKey(next);
+            }
+            if (!cached && loading.add(next)) {
+                try {
+                    readAhead.submit(() -> {
+                        try {
+                            load(next);
+                        } finally {
+                            loading.remove(next);
+                        }
+                    });
+                } catch (RejectedExecutionException _) {
+                    loading.remove(next); // Closed meanwhile
+                }
+            }
+        }
+    }
+
+    private Page load(long pageNumber) {
+        long first = pageNumber * PAGE_SIZE;
+        int count = (int) Math.max(0, Math.min(PAGE_SIZE, size() - first));
+        CsvRow[] rows = new CsvRow[count];
+        if (count > 0) {
+            int checkpoint = rowIndex.checkpointBefore(first);
+            CsvTokenizer tokenizer = mappedCsv.tokenizer(rowIndex.getOffsets()[checkpoint], mappedCsv.size());
+            for (long r = rowIndex.getRows()[checkpoint]; r < first; r++) {
+                tokenizer.skip();
+            }
+            CsvRow row = mappedCsv.newRow();
+            for (int i = 0; i < count && tokenizer.next(row); i++) {
+                rows[i] = row.copy();
+            }
+        }
+        Page page = new Page(rows);
+        synchronized (pages) {
+            pages.put(pageNumber, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,34 @@
+package lehoai.csvtitan.service;
+
+/**
+ * Options of {@link CsvUnion}.
+ */
+public class UnionOptions {
+
+    /**
+     * Number of inputs copied at the same time. With more than one, the output is sized first and every input
+     * is copied at its own offset by a pool of threads, which helps on storage that serves parallel requests
+     * well (SSD, network shares). Only used when every input is copied as it is. Default is 1, which copies
+     * the inputs one after the other.
+     */
+    public int parallelism;
+
+    /**
+     * True to drop the columns that are not in the first file, false to append them to the output columns,
+     * in the order they are found. Rows of files without a column leave it empty. Default is false.
+     */
+    public boolean dropExtraColumns;
+
+    /**
+     * True to remove duplicate rows from the output, keeping the first occurrence of every row,
+     * see {@link lehoai.csvtitan.service.dedup.Deduplicator}. Default is false.
+     */
+    public boolean distinct;
+
+    /**
+     * Constructs the default options.
+     */
+    public UnionOptions() {
+        this.parallelism = 1;
+    }
+}
@@ -0,0 +1,50 @@
+package lehoai.csvtitan.service.core;
+
+/**
+ * Statistics of a CSV column, gathered while the file is indexed.
+ * Lengths are measured in bytes of the file encoding, without the surrounding quotes.
+ */
+public class ColumnStats {
+
+    /**
+     * Number of rows where the column is empty or missing.
+     */
+    public long emptyCount;
+
+    /**
+     * Length of the shortest non-empty value, or 0 when there is none.
+     */
+    public int minLength;
+
+    /**
+     * Length of the longest value.
+     */
+    public int maxLength;
+
+    /**
+     * Adds a value to the statistics.
+     *
+     * @param length length of the value in bytes
+     */
+    public void accept(int length) {
+        if (length == 0) {
+            emptyCount++;
+            return;
+        }
+        minLength = minLength == 0 ? length : Math.min(minLength, length);
+        maxLength = Math.max(maxLength, length);
+    }
+
+    /**
+     * Adds the statistics of another part of the file.
+     *
+     * @param other the statistics to merge
+     */
+    public void merge(ColumnStats other) {
+        emptyCount += other.emptyCount;
+        if (other.minLength != 0) {
+            minLength = minLength == 0 ? other.minLength : Math.min(minLength, other.minLength);
+        }
+        maxLength = Math.max(maxLength, other.maxLength);
+    }
+}
@@ -0,0 +1,44 @@
+package lehoai.csvtitan.service.dedup;
+
+/**
+ * Options of {@link Deduplicator}.
+ */
+public class DedupOptions {
+
+    /**
+     * Indexes of the columns whose values identify a row, {@code null} or empty to compare whole rows.
+     * Default is {@code null}.
+     */
+    public int[] keyColumns;
+
+    /**
+     * True to keep the last row of every key, false to keep the first one. Kept rows stay in input order.
+     * Default is false.
+     */
+    public boolean keepLast;
+
+    /**
+     * Memory available for the fingerprints of the distinct keys, in bytes. Default is 0, which means
+     * a fraction of the maximum heap.
+     */
+    public long memoryBudget;
+
+    /**
+     * Fraction of the maximum heap used as budget when {@link #memoryBudget} is 0. Default is 0.25.
+     */
+    public double heapFraction;
+
+    /**
+     * Constructs the default options.
+     */
+    public DedupOptions() {
+        this.heapFraction = 0.25;
+    }
+
+    /**
+     * @return the memory budget in bytes
+     */
+    public long budget() {
+        return memoryBudget > 0 ? memoryBudget : (long) (Runtime.getRuntime().maxMemory() * heapFraction);
+    }
+}
@@ -0,0 +1,600 @@
+package lehoai.csvtitan.service.dedup;
+
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.parse.CsvRow;
+import lehoai.csvtitan.service.parse.CsvTokenizer;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Removes duplicate rows from a CSV file, comparing whole rows or key columns, in one streaming pass.
+ * <p>
+ * Every row is identified by a 128-bit {@link Fingerprint} of its key values, kept in a primitive
+ * {@link FingerprintTable}: while the distinct keys fit in the memory budget, the first row of every key is
+ * written as soon as it is read (with {@link DedupOptions#keepLast}, a second pass writes the last row of
+ * every key). When the table is full, the file is read again and its rows are spilled into hash partitions
+ * of fingerprints, so that every partition holds whole groups of duplicates and is deduplicated on its own,
+ * partitioned again if it is still too large. Kept rows are tagged with their row number and merged back in
+ * input order, so the output is the same whatever the budget.
+ * <p>
+ * Files in an ASCII compatible encoding (see {@link MappedCsv#supports(CsvConfig)}) are read with the byte
+ * tokenizer and their rows are copied as they are; other files are parsed with commons-csv and rewritten.
+ */
+public class Deduplicator {
+
+    private static final int MAX_PARTITIONS = 256;
+    private static final int SUB_PARTITIONS = 16;
+    private static final int MAX_DEPTH = 8;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String CRLF = "\r\n";
+    private static final char QUOTE = (char) MappedCsv.QUOTE;
+
+    /**
+     * A spilled row with its fingerprint and its row number.
+     */
+    private record Spilled(long hi, long lo, long row, byte[] bytes) {
+    }
+
+    /**
+     * Removes duplicate rows.
+     *
+     * @param inputFile  path to the input CSV file
+     * @param config     the configuration for reading the CSV file
+     * @param outputFile path to the output CSV file, written with the header and the configuration of the input
+     * @param options    key columns, which row is kept and memory budget
+     * @return the number of rows written
+     * @throws IOException if an I/O error occurs, or if the keys are too many for the budget even once partitioned
+     */
+    public long dedup(String inputFile, CsvConfig config, String outputFile, DedupOptions options) throws IOException {
+        try (Rows rows = MappedCsv.supports(config)
+                ? new MappedRows(inputFile, config, options.keyColumns)
+                : new ParsedRows(inputFile, config, options.keyColumns)) {
+            FingerprintTable table = new FingerprintTable(options.budget());
+            long kept = options.keepLast ? keepLast(rows, table, outputFile) : keepFirst(rows, table, outputFile);
+            if (kept >= 0) {
+                return kept;
+            }
+            // Spread the keys estimated from the part read so far over partitions half full.
+            double estimated = table.size() / Math.max(rows.progress(), 1e-3);
+            int partitions = (int) Math.max(2, Math.min(MAX_PARTITIONS, Math.ceil(2 * estimated / table.capacity())));
+            table = null; // Release the table before every partition gets its own
+            return dedupPartitioned(rows, partitions, options, outputFile);
+        }
+    }
+
+    /**
+     * Writes the first row of every key while the table has room.
+     *
+     * @return the number of rows written, or -1 if the table is full
+     */
+    private static long keepFirst(Rows rows, FingerprintTable table, String outputFile) throws IOException {
+        long kept = 0;
+        try (RowSink sink = rows.openSink(outputFile)) {
+            for (long n = 0; rows.next(); n++) {
+                long[] fingerprint = Fingerprint.of(rows.key());
+                long previous = table.put(fingerprint[0], fingerprint[1], n, false);
+                if (previous == FingerprintTable.FULL) {
+                    return -1;
+                }
+                if (previous == FingerprintTable.ABSENT) {
+                    sink.write(rows.row());
+                    kept++;
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the last row of every key while the table has room, then writes them in a second pass.
+     *
+     * @return the number of rows written, or -1 if the table is full
+     */
+    private static long keepLast(Rows rows, FingerprintTable table, String outputFile) throws IOException {
+        for (long n = 0; rows.next(); n++) {
+            long[] fingerprint = Fingerprint.of(rows.key());
+            if (table.put(fingerprint[0], fingerprint[1], n, true) == FingerprintTable.FULL) {
+                return -1;
+            }
+        }
+        rows.rewind();
+        long kept = 0;
+        try (RowSink sink = rows.openSink(outputFile)) {
+            for (long n = 0; rows.next(); n++) {
+                long[] fingerprint = Fingerprint.of(rows.key());
+                if (table.get(fingerprint[0], fingerprint[1]) == n) {
+                    sink.write(rows.row());
+                    kept++;
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Spills the rows into hash partitions, deduplicates every partition, then merges the kept rows by row number.
+     */
+    private static long dedupPartitioned(Rows rows, int partitions, DedupOptions options, String outputFile) throws IOException {
+        List<Path> tempFiles = new ArrayList<>();
+        try {
+            rows.rewind();
+            Path[] partitionFiles = new Path[partitions];
+            DataOutputStream[] outs = new DataOutputStream[partitions];
+            try {
+                for (int p = 0; p < partitions; p++) {
+                    partitionFiles[p] = Files.createTempFile("dedup_", ".part");
+                    tempFiles.add(partitionFiles[p]);
+                    outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(partitionFiles[p]), BUFFER_SIZE));
+                }
+                for (long n = 0; rows.next(); n++) {
+                    long[] fingerprint = Fingerprint.of(rows.key());
+                    writeSpilled(outs[partition(fingerprint[0], 0, partitions)], new Spilled(fingerprint[0], fingerprint[1], n, rows.row()));
+                }
+            } finally {
+                for (DataOutputStream out : outs) {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            }
+
+            List<Path> keptFiles = new ArrayList<>();
+            for (Path partitionFile : partitionFiles) {
+                keptFiles.add(dedupPartition(partitionFile, 1, options, tempFiles));
+            }
+            try (RowSink sink = rows.openSink(outputFile)) {
+                return mergeByRow(keptFiles, row -> sink.write(row.bytes()));
+            }
+        } finally {
+            for (Path file : tempFiles) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Deduplicates a partition, partitioning it again if its keys don't fit in the budget.
+     *
+     * @param partitionFile the spilled rows of the partition, deleted once read
+     * @param depth         number of times the rows have been partitioned
+     * @param options       which row is kept and memory budget
+     * @param tempFiles     receives the temporary files to delete at the end
+     * @return a file of the kept rows, ordered by row number
+     */
+    private static Path dedupPartition(Path partitionFile, int depth, DedupOptions options, List<Path> tempFiles) throws IOException {
+        FingerprintTable table = new FingerprintTable(options.budget());
+        Path keptFile = Files.createTempFile("dedup_", ".kept");
+        tempFiles.add(keptFile);
+        boolean isFull = false;
+        if (!options.keepLast) {
+            try (DataInputStream in = openSpilled(partitionFile); DataOutputStream out = openKept(keptFile)) {
+                for (Spilled row = readSpilled(in); row != null; row = readSpilled(in)) {
+                    long previous = table.put(row.hi(), row.lo(), row.row(), false);
+                    if (previous == FingerprintTable.FULL) {
+                        isFull = true;
+                        break;
+                    }
+                    if (previous == FingerprintTable.ABSENT) {
+                        writeKept(out, row);
+                    }
+                }
+            }
+        } else {
+            try (DataInputStream in = openSpilled(partitionFile)) {
+                for (Spilled row = readSpilled(in); row != null && !isFull; row = readSpilled(in)) {
+                    isFull = table.put(row.hi(), row.lo(), row.row(), true) == FingerprintTable.FULL;
+                }
+            }
+            if (!isFull) {
+                try (DataInputStream in = openSpilled(partitionFile); DataOutputStream out = openKept(keptFile)) {
+                    for (Spilled row = readSpilled(in); row != null; row = readSpilled(in)) {
+                        if (table.get(row.hi(), row.lo()) == row.row()) {
+                            writeKept(out, row);
+                        }
+                    }
+                }
+            }
+        }
+
+        if (isFull) {
+            if (depth >= MAX_DEPTH) {
+                throw new IOException("Too many distinct keys for a memory budget of " + options.budget() + " bytes");
+            }
+            table = null; // Release the table before going deeper
+            Path[] subFiles = new Path[SUB_PARTITIONS];
+            DataOutputStream[] outs = new DataOutputStream[SUB_PARTITIONS];
+            try (DataInputStream in = openSpilled(partitionFile)) {
+                for (int p = 0; p < SUB_PARTITIONS; p++) {
+                    subFiles[p] = Files.createTempFile("dedup_", ".part");
+                    tempFiles.add(subFiles[p]);
+                    outs[p] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(subFiles[p]), BUFFER_SIZE));
+                }
+                for (Spilled row = readSpilled(in); row != null; row = readSpilled(in)) {
+                    writeSpilled(outs[partition(row.hi(), depth, SUB_PARTITIONS)], row);
+                }
+            } finally {
+                for (DataOutputStream out : outs) {
+                    if (out != null) {
+                        out.close();
+                    }
+                }
+            }
+            List<Path> keptFiles = new ArrayList<>();
+            for (Path subFile : subFiles) {
+                keptFiles.add(dedupPartition(subFile, depth + 1, options, tempFiles));
+            }
+            try (DataOutputStream out = openKept(keptFile)) {
+                mergeByRow(keptFiles, row -> writeKept(out, row));
+            }
+        }
+        Files.deleteIfExists(partitionFile);
+        return keptFile;
+    }
+
+    /**
+     * Merges files of kept rows, each ordered by row number, into one sequence ordered by row number.
+     *
+     * @return the number of rows
+     */
+    private static long mergeByRow(List<Path> keptFiles, SpilledSink sink) throws IOException {
+        record Head(Spilled row, DataInputStream in) {
+        }
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparingLong((Head head) -> head.row().row()));
+        List<DataInputStream> ins = new ArrayList<>();
+        long count = 0;
+        try {
+            for (Path keptFile : keptFiles) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(keptFile), BUFFER_SIZE));
+                ins.add(in);
+                Spilled row = readKept(in);
+                if (row != null) {
+                    heads.add(new Head(row, in));
+                }
+            }
+            while (!heads.isEmpty()) {
+                Head head = heads.poll();
+                sink.write(head.row());
+                count++;
+                Spilled next = readKept(head.in());
+                if (next != null) {
+                    heads.add(new Head(next, head.in()));
+                }
+            }
+        } finally {
+            for (DataInputStream in : ins) {
+                in.close();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Picks the partition of a fingerprint; every depth mixes the bits differently.
+     */
+    private static int partition(long hi, int depth, int partitions) {
+        return (int) Long.remainderUnsigned(Fingerprint.fmix64(hi + depth * 0x9E3779B97F4A7C15L), partitions);
+    }
+
+    private static DataInputStream openSpilled(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+    }
+
+    private static DataOutputStream openKept(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    private static void writeSpilled(DataOutputStream out, Spilled row) throws IOException {
+        out.writeLong(row.hi());
+        out.writeLong(row.lo());
+        writeKept(out, row);
+    }
+
+    private static Spilled readSpilled(DataInputStream in) throws IOException {
+        long hi;
+        try {
+            hi = in.readLong();
+        } catch (EOFException _) {
+            return null;
+        }
+        long lo = in.readLong();
+        long row = in.readLong();
+        return new Spilled(hi, lo, row, in.readNBytes(in.readInt()));
+    }
+
+    private static void writeKept(DataOutputStream out, Spilled row) throws IOException {
+        out.writeLong(row.row());
+        out.writeInt(row.bytes().length);
+        out.write(row.bytes());
+    }
+
+    private static Spilled readKept(DataInputStream in) throws IOException {
+        long row;
+        try {
+            row = in.readLong();
+        } catch (EOFException _) {
+            return null;
+        }
+        return new Spilled(0, 0, row, in.readNBytes(in.readInt()));
+    }
+
+    /**
+     * Receives spilled rows.
+     */
+    private interface SpilledSink {
+        void write(Spilled row) throws IOException;
+    }
+
+    /**
+     * Receives the rows to write, after the header.
+     */
+    private interface RowSink extends AutoCloseable {
+        void write(byte[] row) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * The data rows of the input, which can be read again from the start.
+     */
+    private interface Rows extends AutoCloseable {
+        /**
+         * Moves back to the first data row.
+         */
+        void rewind() throws IOException;
+
+        /**
+         * @return false at the end of the file
+         */
+        boolean next() throws IOException;
+
+        /**
+         * @return the key values of the current row, each prefixed by its length
+         */
+        byte[] key();
+
+        /**
+         * @return the bytes of the current row, as written by the sinks of {@link #openSink(String)}
+         */
+        byte[] row();
+
+        /**
+         * @return the fraction of the file read so far
+         */
+        double progress();
+
+        /**
+         * Opens the output and writes the header of the input.
+         */
+        RowSink openSink(String outputFile) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Rows of a mapped file, copied as they are, with the line break of the header.
+     */
+    private static class MappedRows implements Rows {
+        private final MappedCsv csv;
+        private final CsvTokenizer tokenizer;
+        private final CsvRow row;
+        private final int[] keyColumns;
+        private final long dataStart;
+        private final ByteArrayOutputStream key = new ByteArrayOutputStream();
+
+        private MappedRows(String inputFile, CsvConfig config, int[] keyColumns) throws IOException {
+            this.csv = new MappedCsv(inputFile, config);
+            this.tokenizer = csv.tokenizer();
+            this.row = csv.newRow();
+            this.keyColumns = keyColumns;
+            tokenizer.skip();
+            this.dataStart = tokenizer.position();
+        }
+
+        @Override
+        public void rewind() {
+            tokenizer.position(dataStart);
+        }
+
+        @Override
+        public boolean next() {
+            return tokenizer.next(row);
+        }
+
+        @Override
+        public byte[] key() {
+            key.reset();
+            int count = keyColumns == null || keyColumns.length == 0 ? row.size() : keyColumns.length;
+            for (int i = 0; i < count; i++) {
+                int column = keyColumns == null || keyColumns.length == 0 ? i : keyColumns[i];
+                appendKey(key, column < row.size() ? row.getBytes(column) : null);
+            }
+            return key.toByteArray();
+        }
+
+        @Override
+        public byte[] row() {
+            return row.getRawBytes();
+        }
+
+        @Override
+        public double progress() {
+            return (double) (tokenizer.position() - dataStart) / Math.max(1, csv.size() - dataStart);
+        }
+
+        @Override
+        public RowSink openSink(String outputFile) throws IOException {
+            byte last = dataStart > 0 ? csv.segment().get(ValueLayout.JAVA_BYTE, dataStart - 1) : 0;
+            byte[] lineBreak = last == '\n' && dataStart > 1 && csv.segment().get(ValueLayout.JAVA_BYTE, dataStart - 2) == '\r'
+                    ? CRLF.getBytes(StandardCharsets.US_ASCII)
+                    : last == '\n' || last == '\r' ? new byte[]{last} : CRLF.getBytes(StandardCharsets.US_ASCII);
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputFile)), BUFFER_SIZE * 4);
+            out.write(csv.segment().asSlice(0, dataStart).toArray(ValueLayout.JAVA_BYTE));
+            if (dataStart > 0 && last != '\n' && last != '\r') {
+                out.write(lineBreak);
+            }
+            return new RowSink() {
+                @Override
+                public void write(byte[] row) throws IOException {
+                    out.write(row);
+                    out.write(lineBreak);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            csv.close();
+        }
+    }
+
+    /**
+     * Rows parsed with commons-csv, for encodings the byte tokenizer can't read. Rows are kept formatted in UTF-8
+     * and written in the file encoding.
+     */
+    private static class ParsedRows implements Rows {
+        private final Path file;
+        private final Charset charset;
+        private final CSVFormat format;
+        private final int[] keyColumns;
+        private final double bytesPerChar;
+        private final long size;
+        private final ByteArrayOutputStream key = new ByteArrayOutputStream();
+        private CSVParser parser;
+        private Iterator<CSVRecord> records;
+        private List<String> header;
+        private CSVRecord record;
+
+        private ParsedRows(String inputFile, CsvConfig config, int[] keyColumns) throws IOException {
+            this.file = Paths.get(inputFile);
+            this.charset = Charset.forName(config.encode);
+            this.format = CSVFormat.Builder.create().setDelimiter(config.delimiter).setQuote(QUOTE)
+                    .setRecordSeparator(CRLF).build();
+            this.keyColumns = keyColumns;
+            this.bytesPerChar = charset.newEncoder().averageBytesPerChar();
+            this.size = Files.size(file);
+            rewind();
+        }
+
+        @Override
+        public void rewind() throws IOException {
+            if (parser != null) {
+                parser.close();
+            }
+            InputStreamReader reader = new InputStreamReader(Files.newInputStream(file), charset);
+            parser = format.parse(reader);
+            records = parser.iterator();
+            header = records.hasNext() ? stripBom(records.next().toList()) : List.of();
+        }
+
+        @Override
+        public boolean next() {
+            if (!records.hasNext()) {
+                return false;
+            }
+            record = records.next();
+            return true;
+        }
+
+        @Override
+        public byte[] key() {
+            key.reset();
+            int count = keyColumns == null || keyColumns.length == 0 ? record.size() : keyColumns.length;
+            for (int i = 0; i < count; i++) {
+                int column = keyColumns == null || keyColumns.length == 0 ? i : keyColumns[i];
+                appendKey(key, column < record.size() ? record.get(column).getBytes(StandardCharsets.UTF_8) : null);
+            }
+            return key.toByteArray();
+        }
+
+        @Override
+        public byte[] row() {
+            return format.format((Object[]) record.values()).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public double progress() {
+            return record == null ? 0 : Math.min(1, record.getCharacterPosition() * bytesPerChar / Math.max(1, size));
+        }
+
+        @Override
+        public RowSink openSink(String outputFile) throws IOException {
+            Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(outputFile)), charset));
+            out.write(format.format(header.toArray()));
+            out.write(CRLF);
+            return new RowSink() {
+                @Override
+                public void write(byte[] row) throws IOException {
+                    out.write(new String(row, StandardCharsets.UTF_8));
+                    out.write(CRLF);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
+        }
+
+        private static List<String> stripBom(List<String> header) {
+            if (header.isEmpty() || !header.getFirst().startsWith("\uFEFF")) {
+                return header;
+            }
+            List<String> stripped = new ArrayList<>(header);
+            stripped.set(0, stripped.getFirst().substring(1));
+            return stripped;
+        }
+    }
+
+    /**
+     * Appends a key value prefixed by its length plus one, 0 standing for a missing column.
+     */
+    private static void appendKey(ByteArrayOutputStream key, byte[] value) {
+        int length = value == null ? 0 : value.length + 1;
+        while ((length & ~0x7F) != 0) {
+            key.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        key.write(length);
+        if (value != null) {
+            key.write(value, 0, value.length);
+        }
+    }
+}
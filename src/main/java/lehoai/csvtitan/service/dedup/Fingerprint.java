@@ -0,0 +1,114 @@
+package lehoai.csvtitan.service.dedup;
+
+/**
+ * 128-bit fingerprint of a byte array: MurmurHash3 x64 128 with seed 0.
+ * Two different keys get the same fingerprint with a probability around 2^-128 per pair,
+ * so rows are compared by fingerprint only and never by value.
+ */
+final class Fingerprint {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Fingerprint() {
+    }
+
+    /**
+     * Hashes a byte array.
+     *
+     * @param data the bytes to hash
+     * @return the high and the low 64 bits of the fingerprint
+     */
+    @SuppressWarnings("fallthrough")
+    static long[] of(byte[] data) {
+        long h1 = 0;
+        long h2 = 0;
+        int length = data.length;
+        int blocks = length / 16;
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i * 16);
+            long k2 = getLong(data, i * 16 + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = blocks * 16;
+        // The last 1 to 15 bytes: every case falls through to the next one on purpose.
+        switch (length & 15) {
+            case 15: k2 ^= (long) (data[tail + 14] & 0xFF) << 48; // fall through
+            case 14: k2 ^= (long) (data[tail + 13] & 0xFF) << 40; // fall through
+            case 13: k2 ^= (long) (data[tail + 12] & 0xFF) << 32; // fall through
+            case 12: k2 ^= (long) (data[tail + 11] & 0xFF) << 24; // fall through
+            case 11: k2 ^= (long) (data[tail + 10] & 0xFF) << 16; // fall through
+            case 10: k2 ^= (long) (data[tail + 9] & 0xFF) << 8; // fall through
+            case 9: k2 ^= data[tail + 8] & 0xFF;
+                h2 ^= mixK2(k2); // fall through
+            case 8: k1 ^= (long) (data[tail + 7] & 0xFF) << 56; // fall through
+            case 7: k1 ^= (long) (data[tail + 6] & 0xFF) << 48; // fall through
+            case 6: k1 ^= (long) (data[tail + 5] & 0xFF) << 40; // fall through
+            case 5: k1 ^= (long) (data[tail + 4] & 0xFF) << 32; // fall through
+            case 4: k1 ^= (long) (data[tail + 3] & 0xFF) << 24; // fall through
+            case 3: k1 ^= (long) (data[tail + 2] & 0xFF) << 16; // fall through
+            case 2: k1 ^= (long) (data[tail + 1] & 0xFF) << 8; // fall through
+            case 1: k1 ^= data[tail] & 0xFF;
+                h1 ^= mixK1(k1); // fall through
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    /**
+     * Scrambles the bits of a number, so that any subset of them is uniformly distributed.
+     *
+     * @param k a number
+     * @return the mixed number
+     */
+    static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,139 @@
+package lehoai.csvtitan.service.dedup;
+
+/**
+ * Open-addressing hash table from 128-bit fingerprints to a row number, stored in one primitive array
+ * of (high bits, low bits, row) triples probed linearly. No object is allocated per entry, so the table costs
+ * 24 bytes per slot and it is kept at most half full. It doubles as long as the old and the new arrays together
+ * fit its memory budget, after which it reports that it is full instead of growing.
+ */
+class FingerprintTable {
+
+    /**
+     * Bytes of one slot.
+     */
+    static final int SLOT_BYTES = 24;
+
+    /**
+     * Returned by {@link #put} when the fingerprint was not in the table.
+     */
+    static final long ABSENT = -1;
+
+    /**
+     * Returned by {@link #put} when the table is full.
+     */
+    static final long FULL = -2;
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long maxSlots;
+    private long[] slots;
+    private int mask;
+    private int size;
+
+    /**
+     * @param budget bytes the table may use, including while it grows; at least 16 slots are used
+     */
+    FingerprintTable(long budget) {
+        // Growing to n slots holds n / 2 old slots at the same time, so n * 3 / 2 slots must fit the budget.
+        long max = Math.max(MIN_CAPACITY, Math.min(1 << 29, budget / (SLOT_BYTES * 3 / 2)));
+        this.maxSlots = Long.highestOneBit(max);
+        int capacity = (int) Math.min(maxSlots, INITIAL_CAPACITY);
+        this.slots = new long[capacity * 3];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the number of fingerprints the table can hold within its budget
+     */
+    long capacity() {
+        return maxSlots / 2;
+    }
+
+    /**
+     * @return the number of fingerprints in the table
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Maps a fingerprint to a row.
+     *
+     * @param hi      high bits of the fingerprint
+     * @param lo      low bits of the fingerprint
+     * @param row     the row number
+     * @param replace true to replace the row of a fingerprint already in the table, false to keep it
+     * @return the row the fingerprint had, {@link #ABSENT} if it was added, or {@link #FULL} if there was no room
+     */
+    long put(long hi, long lo, long row, boolean replace) {
+        if (hi == 0 && lo == 0) {
+            lo = 1; // (0, 0) marks free slots
+        }
+        int slot = find(hi, lo);
+        if (slots[slot * 3] != 0 || slots[slot * 3 + 1] != 0) {
+            long previous = slots[slot * 3 + 2];
+            if (replace) {
+                slots[slot * 3 + 2] = row;
+            }
+            return previous;
+        }
+        if (size + 1 > (mask + 1) / 2) {
+            if (mask + 1 >= maxSlots) {
+                return FULL;
+            }
+            grow();
+            slot = find(hi, lo);
+        }
+        slots[slot * 3] = hi;
+        slots[slot * 3 + 1] = lo;
+        slots[slot * 3 + 2] = row;
+        size++;
+        return ABSENT;
+    }
+
+    /**
+     * Gets the row of a fingerprint.
+     *
+     * @param hi high bits of the fingerprint
+     * @param lo low bits of the fingerprint
+     * @return the row, or {@link #ABSENT}
+     */
+    long get(long hi, long lo) {
+        if (hi == 0 && lo == 0) {
+            lo = 1;
+        }
+        int slot = find(hi, lo);
+        return slots[slot * 3] != 0 || slots[slot * 3 + 1] != 0 ? slots[slot * 3 + 2] : ABSENT;
+    }
+
+    /**
+     * Finds the slot of a fingerprint, or the free slot where it would go.
+     */
+    private int find(long hi, long lo) {
+        int slot = (int) lo & mask;
+        while (true) {
+            long slotHi = slots[slot * 3];
+            long slotLo = slots[slot * 3 + 1];
+            if ((slotHi == hi && slotLo == lo) || (slotHi == 0 && slotLo == 0)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long[] old = slots;
+        int capacity = (mask + 1) * 2;
+        slots = new long[capacity * 3];
+        mask = capacity - 1;
+        for (int i = 0; i < old.length; i += 3) {
+            if (old[i] != 0 || old[i + 1] != 0) {
+                int slot = find(old[i], old[i + 1]);
+                slots[slot * 3] = old[i];
+                slots[slot * 3 + 1] = old[i + 1];
+                slots[slot * 3 + 2] = old[i + 2];
+            }
+        }
+    }
+}
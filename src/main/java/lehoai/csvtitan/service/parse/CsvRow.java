@@ -0,0 +1,229 @@
+package lehoai.csvtitan.service.parse;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A lightweight view of one CSV record inside a memory-mapped file.
+ * Only the byte offsets of the record and its fields are kept; a field is decoded to a
+ * {@link String} when {@link #get(int)} is called. Instances are reused by the tokenizer,
+ * so a row is only valid until it is filled again.
+ */
+public class CsvRow {
+
+    private final Charset charset;
+    private final byte quote;
+    private MemorySegment segment;
+    private long start;
+    private long end;
+    private long[] bounds = new long[32]; // Pairs of (start, end) offsets for every field.
+    private boolean[] escaped = new boolean[16]; // True when the field contains doubled quotes.
+    private int size;
+
+    /**
+     * Constructs an empty row view.
+     *
+     * @param charset the charset used to decode fields
+     * @param quote   the quote byte used to escape fields
+     */
+    public CsvRow(Charset charset, byte quote) {
+        this.charset = charset;
+        this.quote = quote;
+    }
+
+    /**
+     * Resets the row before the tokenizer fills it.
+     *
+     * @param segment the mapped region holding the record
+     * @param start   offset of the first byte of the record
+     */
+    void reset(MemorySegment segment, long start) {
+        this.segment = segment;
+        this.start = start;
+        this.end = start;
+        this.size = 0;
+    }
+
+    /**
+     * Appends a field to the row.
+     *
+     * @param from      offset of the first content byte
+     * @param to        offset after the last content byte
+     * @param isEscaped whether the content holds doubled quotes
+     */
+    void addField(long from, long to, boolean isEscaped) {
+        if (size == escaped.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            escaped = Arrays.copyOf(escaped, escaped.length * 2);
+        }
+        bounds[size * 2] = from;
+        bounds[size * 2 + 1] = to;
+        escaped[size] = isEscaped;
+        size++;
+    }
+
+    void setEnd(long end) {
+        this.end = end;
+    }
+
+    /**
+     * Fills this view from field offsets collected elsewhere, e.g. in a batch of a parallel scan.
+     *
+     * @param segment     the mapped region holding the record
+     * @param start       offset of the first byte of the record
+     * @param end         offset after the last byte of the record
+     * @param fieldBounds pairs of (start, end) offsets
+     * @param flags       escaped flags
+     * @param first       index of the first field of the record in {@code flags}
+     * @param count       number of fields of the record
+     */
+    void load(MemorySegment segment, long start, long end, long[] fieldBounds, boolean[] flags, int first, int count) {
+        reset(segment, start);
+        this.end = end;
+        if (count > escaped.length) {
+            bounds = new long[count * 2];
+            escaped = new boolean[count];
+        }
+        System.arraycopy(fieldBounds, first * 2, bounds, 0, count * 2);
+        System.arraycopy(flags, first, escaped, 0, count);
+        size = count;
+    }
+
+    long[] bounds() {
+        return bounds;
+    }
+
+    boolean[] escapedFlags() {
+        return escaped;
+    }
+
+    /**
+     * @return the number of fields in this row
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return offset of the first byte of the record in the mapped file
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return offset after the last byte of the record, excluding the line terminator
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @param index field index
+     * @return offset of the first content byte of the field (after the opening quote)
+     */
+    public long fieldStart(int index) {
+        checkIndex(index);
+        return bounds[index * 2];
+    }
+
+    /**
+     * @param index field index
+     * @return length in bytes of the field content (without the surrounding quotes)
+     */
+    public int fieldLength(int index) {
+        checkIndex(index);
+        return (int) (bounds[index * 2 + 1] - bounds[index * 2]);
+    }
+
+    /**
+     * Decodes a field to a {@link String}, removing the surrounding quotes and unescaping doubled quotes.
+     *
+     * @param index field index
+     * @return the field value
+     */
+    public String get(int index) {
+        checkIndex(index);
+        return new String(getBytes(index), charset);
+    }
+
+    /**
+     * Copies the content of a field, removing the surrounding quotes and unescaping doubled quotes.
+     *
+     * @param index field index
+     * @return the field content in the file encoding
+     */
+    public byte[] getBytes(int index) {
+        checkIndex(index);
+        long from = bounds[index * 2];
+        byte[] bytes = new byte[(int) (bounds[index * 2 + 1] - from)];
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, from, bytes, 0, bytes.length);
+        if (!escaped[index]) {
+            return bytes;
+        }
+        int length = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[length++] = bytes[i];
+            if (bytes[i] == quote && i + 1 < bytes.length && bytes[i + 1] == quote) {
+                i++;
+            }
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Copies the raw bytes of the whole record as they appear in the file, excluding the line terminator.
+     *
+     * @return the raw record bytes
+     */
+    public byte[] getRawBytes() {
+        byte[] bytes = new byte[(int) (end - start)];
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, start, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Decodes all fields of the row.
+     *
+     * @return the field values
+     */
+    public List<String> toList() {
+        List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(get(i));
+        }
+        return values;
+    }
+
+    /**
+     * Creates an independent copy of this view which stays valid when the tokenizer moves on.
+     * The copy still points into the mapped file, so no field is decoded.
+     *
+     * @return a copy of this row
+     */
+    public CsvRow copy() {
+        CsvRow row = new CsvRow(charset, quote);
+        row.segment = segment;
+        row.start = start;
+        row.end = end;
+        row.size = size;
+        row.bounds = Arrays.copyOf(bounds, Math.max(2, size * 2));
+        row.escaped = Arrays.copyOf(escaped, Math.max(1, size));
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for row of " + size + " fields");
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package lehoai.csvtitan.service.parse;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Byte-level CSV tokenizer working directly on a memory-mapped region.
+ * Records are split on CR, LF or CRLF outside of quotes, fields on the delimiter byte.
+ * Empty lines are skipped, as the commons-csv parser used by {@code CsvReader} does.
+ * Field ends and quotes are located through the bitmaps of a {@link StructuralScanner}.
+ */
+public class CsvTokenizer {
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final MemorySegment segment;
+    private final byte delimiter;
+    private final byte quote;
+    private final long limit;
+    private final StructuralScanner scanner;
+    private final long[] masks = new long[2];
+    private long blockStart = -1;
+    private long position;
+
+    /**
+     * Constructs a tokenizer for the byte range {@code [from, to)} of the segment.
+     * {@code from} must point to the start of a record.
+     *
+     * @param segment   the mapped file
+     * @param delimiter the field delimiter
+     * @param quote     the quote character
+     * @param from      offset of the first record
+     * @param to        offset after the last byte to tokenize
+     */
+    public CsvTokenizer(MemorySegment segment, byte delimiter, byte quote, long from, long to) {
+        this(segment, delimiter, quote, from, to, StructuralScanner.create(delimiter, quote));
+    }
+
+    /**
+     * Constructs a tokenizer for the byte range {@code [from, to)} of the segment.
+     * {@code from} must point to the start of a record.
+     *
+     * @param segment   the mapped file
+     * @param delimiter the field delimiter
+     * @param quote     the quote character
+     * @param from      offset of the first record
+     * @param to        offset after the last byte to tokenize
+     * @param scanner   the scanner locating structural characters
+     */
+    public CsvTokenizer(MemorySegment segment, byte delimiter, byte quote, long from, long to, StructuralScanner scanner) {
+        this.segment = segment;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.position = from;
+        this.limit = to;
+        this.scanner = scanner;
+    }
+
+    /**
+     * @return offset of the next record to tokenize
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Moves the tokenizer to another record start.
+     *
+     * @param position offset of a record start
+     */
+    public void position(long position) {
+        this.position = position;
+    }
+
+    /**
+     * @return offset after the last byte this tokenizer reads
+     */
+    public long limit() {
+        return limit;
+    }
+
+    /**
+     * Checks whether another record is available, skipping empty lines.
+     *
+     * @return true if {@link #next(CsvRow)} will fill a row
+     */
+    public boolean hasNext() {
+        skipEmptyLines();
+        return position < limit;
+    }
+
+    /**
+     * Tokenizes the next record into the given row view.
+     *
+     * @param row the row to fill
+     * @return false when the end of the range is reached
+     */
+    public boolean next(CsvRow row) {
+        skipEmptyLines();
+        if (position >= limit) {
+            return false;
+        }
+        row.reset(segment, position);
+        position = scanRecord(position, row);
+        return true;
+    }
+
+    /**
+     * Skips the next record without collecting its fields.
+     *
+     * @return false when the end of the range is reached
+     */
+    public boolean skip() {
+        skipEmptyLines();
+        if (position >= limit) {
+            return false;
+        }
+        position = scanRecord(position, null);
+        return true;
+    }
+
+    /**
+     * Scans one record starting at {@code pos}.
+     *
+     * @param pos offset of the record start
+     * @param row the row to fill, or {@code null} to only find the record end
+     * @return offset after the line terminator of the record
+     */
+    private long scanRecord(long pos, CsvRow row) {
+        while (true) {
+            long fieldStart = pos;
+            long fieldEnd;
+            boolean escaped = false;
+            if (pos < limit && byteAt(pos) == quote) {
+                fieldStart = ++pos;
+                while (true) {
+                    pos = nextMatch(pos, StructuralScanner.QUOTE);
+                    if (pos >= limit) {
+                        fieldEnd = pos;
+                        break;
+                    }
+                    if (pos + 1 < limit && byteAt(pos + 1) == quote) {
+                        escaped = true;
+                        pos += 2;
+                        continue;
+                    }
+                    fieldEnd = pos++;
+                    break;
+                }
+                // Leniently ignore anything between the closing quote and the next delimiter.
+                pos = nextMatch(pos, StructuralScanner.FIELD_END);
+            } else {
+                pos = nextMatch(pos, StructuralScanner.FIELD_END);
+                fieldEnd = pos;
+            }
+            if (row != null) {
+                row.addField(fieldStart, fieldEnd, escaped);
+            }
+
+            if (pos >= limit) {
+                if (row != null) {
+                    row.setEnd(pos);
+                }
+                return pos;
+            }
+            byte b = byteAt(pos);
+            if (b == delimiter) {
+                pos++;
+                continue;
+            }
+            if (row != null) {
+                row.setEnd(pos);
+            }
+            pos++;
+            if (b == CR && pos < limit && byteAt(pos) == LF) {
+                pos++;
+            }
+            return pos;
+        }
+    }
+
+    private void skipEmptyLines() {
+        while (position < limit) {
+            byte b = byteAt(position);
+            if (b != CR && b != LF) {
+                return;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Finds the first byte at or after {@code pos} that is set in the given bitmap.
+     *
+     * @param pos  offset to start from
+     * @param kind {@link StructuralScanner#FIELD_END} or {@link StructuralScanner#QUOTE}
+     * @return offset of the match, or {@code limit} when there is none
+     */
+    private long nextMatch(long pos, int kind) {
+        while (pos < limit) {
+            long block = pos & -StructuralScanner.BLOCK_SIZE;
+            if (block != blockStart) {
+                scanner.scanBlock(segment, block, limit, masks);
+                blockStart = block;
+            }
+            long bits = masks[kind] & (-1L << (pos - block));
+            if (bits != 0) {
+                return block + Long.numberOfTrailingZeros(bits);
+            }
+            pos = block + StructuralScanner.BLOCK_SIZE;
+        }
+        return limit;
+    }
+
+    private byte byteAt(long offset) {
+        return segment.get(ValueLayout.JAVA_BYTE, offset);
+    }
+}
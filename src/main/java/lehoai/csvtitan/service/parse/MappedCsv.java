@@ -0,0 +1,180 @@
+package lehoai.csvtitan.service.parse;
+
+import lehoai.csvtitan.service.core.CsvConfig;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A CSV file mapped into memory with {@link FileChannel#map(FileChannel.MapMode, long, long, Arena)}.
+ * The mapping lives in a shared arena so that tokenizers on several threads can read it,
+ * and it is released deterministically by {@link #close()}.
+ */
+public class MappedCsv implements AutoCloseable {
+
+    /**
+     * The quote character, as used by {@code CsvReader}.
+     */
+    public static final byte QUOTE = '"';
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Multibyte encodings whose sequences only use bytes from 0x80, so an ASCII byte is always an ASCII character.
+     * Others, such as Shift_JIS, GBK or Big5, have trailing bytes that can be equal to a delimiter.
+     */
+    private static final Set<String> ASCII_SAFE_MULTIBYTE = Set.of("UTF-8", "EUC-JP", "EUC-KR", "x-EUC-TW", "GB2312");
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final Charset charset;
+    private final byte delimiter;
+    private final StructuralScanner scanner;
+    private final long dataStart;
+
+    /**
+     * Maps the given file in read-only mode.
+     *
+     * @param filePath path to the CSV file
+     * @param config   the configuration for reading the CSV file
+     * @throws IOException if the file can't be mapped or the configuration is not supported
+     */
+    public MappedCsv(String filePath, CsvConfig config) throws IOException {
+        if (!supports(config)) {
+            throw new IOException("Byte-level parsing needs a single-byte delimiter and an ASCII compatible encoding, got "
+                    + config.delimiter + " / " + config.encode);
+        }
+        this.charset = Charset.forName(config.encode);
+        this.delimiter = (byte) config.delimiter.charAt(0);
+        this.scanner = StructuralScanner.create(delimiter, QUOTE);
+        this.arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            this.segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+        this.dataStart = hasBom() ? UTF8_BOM.length : 0;
+    }
+
+    /**
+     * Checks whether a configuration can be handled at byte level: the encoding must be single-byte or never use
+     * ASCII bytes inside multibyte sequences, and the delimiter, the quote and the line terminators must each be
+     * encoded as the same single byte as in ASCII.
+     *
+     * @param config the configuration to check
+     * @return true if the file can be tokenized by {@link CsvTokenizer}
+     */
+    public static boolean supports(CsvConfig config) {
+        if (config.delimiter == null || config.delimiter.length() != 1) {
+            return false;
+        }
+        Charset cs;
+        try {
+            cs = Charset.forName(config.encode);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (!cs.canEncode() || cs.newEncoder().maxBytesPerChar() > 1 && !ASCII_SAFE_MULTIBYTE.contains(cs.name())) {
+            return false;
+        }
+        String structural = config.delimiter + (char) QUOTE + "\r\n";
+        for (char c : structural.toCharArray()) {
+            if (c > 0x7F || !Arrays.equals(String.valueOf(c).getBytes(cs), new byte[]{(byte) c})) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a tokenizer over the whole file, starting after the byte order mark if there is one.
+     *
+     * @return a new tokenizer
+     */
+    public CsvTokenizer tokenizer() {
+        return tokenizer(dataStart, segment.byteSize());
+    }
+
+    /**
+     * Creates a tokenizer over a byte range of the file.
+     *
+     * @param from offset of a record start
+     * @param to   offset after the last byte to tokenize
+     * @return a new tokenizer
+     */
+    public CsvTokenizer tokenizer(long from, long to) {
+        return new CsvTokenizer(segment, delimiter, QUOTE, from, to, scanner);
+    }
+
+    /**
+     * @return a new, empty row view for this file
+     */
+    public CsvRow newRow() {
+        return new CsvRow(charset, QUOTE);
+    }
+
+    /**
+     * @return the mapped file content
+     */
+    public MemorySegment segment() {
+        return segment;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    public long size() {
+        return segment.byteSize();
+    }
+
+    /**
+     * @return offset of the first record, after the byte order mark if there is one
+     */
+    public long dataStart() {
+        return dataStart;
+    }
+
+    /**
+     * @return the scanner used by the tokenizers of this file, safe to share between threads
+     */
+    public StructuralScanner scanner() {
+        return scanner;
+    }
+
+    public byte delimiter() {
+        return delimiter;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * Unmaps the file. Rows and tokenizers created from it must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private boolean hasBom() {
+        if (segment.byteSize() < UTF8_BOM.length) {
+            return false;
+        }
+        for (int i = 0; i < UTF8_BOM.length; i++) {
+            if (segment.get(ValueLayout.JAVA_BYTE, i) != UTF8_BOM[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,342 @@
+package lehoai.csvtitan.service.parse;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Parses a memory-mapped CSV file on several cores by splitting it into byte ranges.
+ * <p>
+ * A split point can fall inside a quoted field, so the ranges are resynchronised in two parallel passes:
+ * the quotes of every chunk are counted, a prefix of the parities gives the quote state at the start of
+ * each chunk, and every chunk then moves its start to the first line terminator outside of quotes.
+ * This relies on quotes only being used to enclose fields (escaped quotes come in pairs), as in RFC 4180.
+ */
+public class ParallelCsvScanner {
+
+    /**
+     * Work done on one record-aligned range of the file.
+     *
+     * @param <R> the result type
+     */
+    public interface RangeTask<R> {
+        /**
+         * Processes a range.
+         *
+         * @param tokenizer a tokenizer bound to the range
+         * @param row       a row view owned by the calling thread
+         * @return the result for the range
+         */
+        R process(CsvTokenizer tokenizer, CsvRow row);
+    }
+
+    private static final long DEFAULT_MIN_RANGE_SIZE = 4L * 1024 * 1024;
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int BATCH_ROWS = 1024;
+    private static final int QUEUED_BATCHES = 4;
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final MappedCsv csv;
+    private final long from;
+    private final int parallelism;
+    private final long minRangeSize;
+    private long[] boundaries;
+
+    /**
+     * Constructs a scanner over the file content starting at {@code from}.
+     *
+     * @param csv         the mapped file
+     * @param from        offset of a record start, usually the first data line
+     * @param parallelism number of threads to use
+     */
+    public ParallelCsvScanner(MappedCsv csv, long from, int parallelism) {
+        this(csv, from, parallelism, DEFAULT_MIN_RANGE_SIZE);
+    }
+
+    /**
+     * Constructs a scanner over the file content starting at {@code from}.
+     *
+     * @param csv          the mapped file
+     * @param from         offset of a record start, usually the first data line
+     * @param parallelism  number of threads to use
+     * @param minRangeSize smallest range worth handing to a thread, in bytes
+     */
+    public ParallelCsvScanner(MappedCsv csv, long from, int parallelism, long minRangeSize) {
+        this.csv = csv;
+        this.from = from;
+        this.parallelism = Math.max(1, parallelism);
+        this.minRangeSize = Math.max(1, minRangeSize);
+    }
+
+    /**
+     * Counts the records of the file.
+     *
+     * @return the number of records
+     */
+    public long count() {
+        return mapRanges((tokenizer, _) -> {
+            long count = 0;
+            while (tokenizer.skip()) {
+                count++;
+            }
+            return count;
+        }).stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Runs a task on every range concurrently.
+     *
+     * @param task the task to run
+     * @param <R>  the result type
+     * @return the results, in file order
+     */
+    public <R> List<R> mapRanges(RangeTask<R> task) {
+        long[] bounds = boundaries();
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            List<Future<R>> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                CsvTokenizer tokenizer = csv.tokenizer(bounds[i], bounds[i + 1]);
+                futures.add(executor.submit(() -> task.process(tokenizer, csv.newRow())));
+            }
+            List<R> results = new ArrayList<>(futures.size());
+            for (Future<R> future : futures) {
+                results.add(await(future));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Calls the consumer for every record, from several threads at once and in no particular order.
+     * Each thread has its own row view; the consumer must be thread-safe.
+     *
+     * @param consumer the row consumer
+     */
+    public void forEach(Consumer<CsvRow> consumer) {
+        mapRanges((tokenizer, row) -> {
+            while (tokenizer.next(row)) {
+                consumer.accept(row);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Calls the consumer for every record in file order, on the calling thread.
+     * The ranges are still tokenized concurrently, each one a few batches ahead of the consumer.
+     *
+     * @param consumer the row consumer
+     */
+    public void forEachOrdered(Consumer<CsvRow> consumer) {
+        long[] bounds = boundaries();
+        int rangeCount = bounds.length - 1;
+        List<BlockingQueue<RowBatch>> queues = new ArrayList<>(rangeCount);
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            // Tasks start in submission order, so the range the consumer waits for is always running or done.
+            for (int i = 0; i < rangeCount; i++) {
+                BlockingQueue<RowBatch> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+                queues.add(queue);
+                CsvTokenizer tokenizer = csv.tokenizer(bounds[i], bounds[i + 1]);
+                executor.submit(() -> produceBatches(tokenizer, queue));
+            }
+            CsvRow row = csv.newRow();
+            try {
+                for (BlockingQueue<RowBatch> queue : queues) {
+                    while (true) {
+                        RowBatch batch = queue.take();
+                        if (batch.error != null) {
+                            throw new IllegalStateException("Parallel scan failed", batch.error);
+                        }
+                        for (int r = 0; r < batch.rows; r++) {
+                            batch.load(csv.segment(), r, row);
+                            consumer.accept(row);
+                        }
+                        if (batch.last) {
+                            break;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Splits the file into record-aligned ranges.
+     *
+     * @return the range boundaries; range {@code i} is {@code [b[i], b[i + 1])}
+     */
+    public long[] boundaries() {
+        if (boundaries == null) {
+            boundaries = computeBoundaries();
+        }
+        return boundaries;
+    }
+
+    private long[] computeBoundaries() {
+        long size = csv.size();
+        long length = size - from;
+        int chunks = (int) Math.max(1, Math.min((long) parallelism * RANGES_PER_THREAD, length / minRangeSize));
+        if (chunks == 1) {
+            return new long[]{from, size};
+        }
+        long[] starts = new long[chunks + 1];
+        for (int i = 0; i < chunks; i++) {
+            starts[i] = from + length / chunks * i;
+        }
+        starts[chunks] = size;
+
+        MemorySegment segment = csv.segment();
+        try (ExecutorService executor = Executors.newFixedThreadPool(parallelism)) {
+            // Pass 1: quote parity of every chunk.
+            List<Future<Boolean>> parities = new ArrayList<>();
+            for (int i = 0; i < chunks; i++) {
+                long chunkStart = starts[i];
+                long chunkEnd = starts[i + 1];
+                parities.add(executor.submit(() -> isOddQuoteCount(segment, chunkStart, chunkEnd)));
+            }
+            boolean[] inQuotes = new boolean[chunks];
+            for (int i = 1; i < chunks; i++) {
+                inQuotes[i] = inQuotes[i - 1] ^ await(parities.get(i - 1));
+            }
+
+            // Pass 2: move every chunk start to the next record start.
+            List<Future<Long>> aligned = new ArrayList<>();
+            for (int i = 1; i < chunks; i++) {
+                long chunkStart = starts[i];
+                boolean quoted = inQuotes[i];
+                aligned.add(executor.submit(() -> nextRecordStart(segment, chunkStart, size, quoted)));
+            }
+            long[] bounds = new long[chunks + 1];
+            bounds[0] = from;
+            int count = 1;
+            for (Future<Long> future : aligned) {
+                long start = await(future);
+                if (start > bounds[count - 1] && start < size) {
+                    bounds[count++] = start;
+                }
+            }
+            bounds[count++] = size;
+            return Arrays.copyOf(bounds, count);
+        }
+    }
+
+    private boolean isOddQuoteCount(MemorySegment segment, long from, long to) {
+        StructuralScanner scanner = csv.scanner();
+        long[] masks = new long[2];
+        long count = 0;
+        long block = from & -StructuralScanner.BLOCK_SIZE;
+        for (; block < to; block += StructuralScanner.BLOCK_SIZE) {
+            scanner.scanBlock(segment, block, to, masks);
+            long quotes = masks[StructuralScanner.QUOTE];
+            if (block < from) {
+                quotes &= -1L << (from - block);
+            }
+            count += Long.bitCount(quotes);
+        }
+        return (count & 1) == 1;
+    }
+
+    private static long nextRecordStart(MemorySegment segment, long from, long to, boolean inQuotes) {
+        long pos = from;
+        while (pos < to) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, pos++);
+            if (b == MappedCsv.QUOTE) {
+                inQuotes = !inQuotes;
+            } else if (!inQuotes && (b == LF || b == CR)) {
+                if (b == CR && pos < to && segment.get(ValueLayout.JAVA_BYTE, pos) == LF) {
+                    pos++;
+                }
+                return pos;
+            }
+        }
+        return to;
+    }
+
+    private void produceBatches(CsvTokenizer tokenizer, BlockingQueue<RowBatch> queue) {
+        CsvRow row = csv.newRow();
+        try {
+            RowBatch batch = new RowBatch();
+            while (tokenizer.next(row)) {
+                batch.add(row);
+                if (batch.rows == BATCH_ROWS) {
+                    queue.put(batch);
+                    batch = new RowBatch();
+                }
+            }
+            batch.last = true;
+            queue.put(batch);
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            RowBatch failed = new RowBatch();
+            failed.error = e;
+            try {
+                // The queue may be full: wait for the consumer rather than dropping the error it waits for.
+                queue.put(failed);
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static <R> R await(Future<R> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Parallel scan failed", e.getCause());
+        }
+    }
+
+    /**
+     * Field offsets of a batch of rows, stored in flat arrays so that a batch costs a handful of objects.
+     */
+    private static class RowBatch {
+        private final long[] rowBounds = new long[BATCH_ROWS * 2];
+        private final int[] firstField = new int[BATCH_ROWS + 1];
+        private long[] fieldBounds = new long[BATCH_ROWS * 16];
+        private boolean[] escaped = new boolean[BATCH_ROWS * 8];
+        private int rows;
+        private boolean last;
+        private RuntimeException error;
+
+        private void add(CsvRow row) {
+            int first = firstField[rows];
+            int count = row.size();
+            if ((first + count) > escaped.length) {
+                int capacity = Math.max(escaped.length * 2, first + count);
+                fieldBounds = Arrays.copyOf(fieldBounds, capacity * 2);
+                escaped = Arrays.copyOf(escaped, capacity);
+            }
+            System.arraycopy(row.bounds(), 0, fieldBounds, first * 2, count * 2);
+            System.arraycopy(row.escapedFlags(), 0, escaped, first, count);
+            rowBounds[rows * 2] = row.getStart();
+            rowBounds[rows * 2 + 1] = row.getEnd();
+            firstField[rows + 1] = first + count;
+            rows++;
+        }
+
+        private void load(MemorySegment segment, int index, CsvRow row) {
+            int first = firstField[index];
+            row.load(segment, rowBounds[index * 2], rowBounds[index * 2 + 1], fieldBounds, escaped, first,
+                    firstField[index + 1] - first);
+        }
+    }
+}
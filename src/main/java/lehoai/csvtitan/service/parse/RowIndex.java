@@ -0,0 +1,167 @@
+package lehoai.csvtitan.service.parse;
+
+import lehoai.csvtitan.service.core.ColumnStats;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sparse index of the data lines of a CSV file.
+ * It keeps the byte offset of every {@code step}-th record of each scanned range, so any row can be
+ * reached by jumping to the closest checkpoint before it and skipping fewer than {@code step} records.
+ * Row numbers are 0-based and exclude the header.
+ */
+public class RowIndex {
+
+    /**
+     * Default distance, in records, between two checkpoints.
+     */
+    public static final int DEFAULT_STEP = 1000;
+
+    private final long[] rows;
+    private final long[] offsets;
+    private final long rowCount;
+
+    /**
+     * Constructs an index from its checkpoints.
+     *
+     * @param rows     row numbers of the checkpoints, ascending, starting with 0
+     * @param offsets  byte offsets of the checkpoints
+     * @param rowCount total number of data lines
+     */
+    public RowIndex(long[] rows, long[] offsets, long rowCount) {
+        this.rows = rows;
+        this.offsets = offsets;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Builds the index in one quote-aware pass, scanning the file on several threads.
+     *
+     * @param csv         the mapped file
+     * @param dataStart   offset of the first data line
+     * @param step        distance, in records, between two checkpoints
+     * @param parallelism number of threads to use
+     * @return the index
+     */
+    public static RowIndex build(MappedCsv csv, long dataStart, int step, int parallelism) {
+        return build(csv, dataStart, step, parallelism, null);
+    }
+
+    /**
+     * Builds the index in one quote-aware pass, scanning the file on several threads,
+     * and gathers column statistics on the way.
+     *
+     * @param csv         the mapped file
+     * @param dataStart   offset of the first data line
+     * @param step        distance, in records, between two checkpoints
+     * @param parallelism number of threads to use
+     * @param stats       statistics to fill, one per column, or {@code null} to only index the records
+     * @return the index
+     */
+    public static RowIndex build(MappedCsv csv, long dataStart, int step, int parallelism, ColumnStats[] stats) {
+        List<RangeResult> ranges = new ParallelCsvScanner(csv, dataStart, parallelism).mapRanges((tokenizer, row) -> {
+            RangeResult result = new RangeResult(stats == null ? 0 : stats.length);
+            while (true) {
+                long offset = tokenizer.position();
+                if (stats == null ? !tokenizer.skip() : !tokenizer.next(row)) {
+                    break;
+                }
+                if (result.count % step == 0) {
+                    result.addCheckpoint(offset);
+                }
+                for (int i = 0; i < result.stats.length; i++) {
+                    result.stats[i].accept(i < row.size() ? row.fieldLength(i) : 0);
+                }
+                result.count++;
+            }
+            return result;
+        });
+
+        int checkpoints = ranges.stream().mapToInt(r -> r.size).sum();
+        long[] rows = new long[checkpoints];
+        long[] offsets = new long[checkpoints];
+        int k = 0;
+        long base = 0;
+        for (RangeResult range : ranges) {
+            for (int i = 0; i < range.size; i++) {
+                rows[k] = base + (long) i * step;
+                offsets[k++] = range.offsets[i];
+            }
+            base += range.count;
+            for (int i = 0; i < range.stats.length; i++) {
+                stats[i].merge(range.stats[i]);
+            }
+        }
+        return new RowIndex(rows, offsets, base);
+    }
+
+    /**
+     * @return total number of data lines
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Finds the closest checkpoint at or before a row.
+     *
+     * @param row a 0-based row number
+     * @return position of the checkpoint in {@link #getRows()} and {@link #getOffsets()}
+     */
+    public int checkpointBefore(long row) {
+        if (rows.length == 0) {
+            throw new IllegalStateException("The index is empty");
+        }
+        int pos = Arrays.binarySearch(rows, Math.max(0, row));
+        return pos >= 0 ? pos : -pos - 2;
+    }
+
+    /**
+     * @return row numbers of the checkpoints
+     */
+    public long[] getRows() {
+        return rows;
+    }
+
+    /**
+     * @return byte offsets of the checkpoints
+     */
+    public long[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * Computes the first row of the last page.
+     *
+     * @param pageSize number of rows in a page
+     * @return the first row of the last page
+     */
+    public long lastPageStart(int pageSize) {
+        return Math.max(0, rowCount - pageSize);
+    }
+
+    /**
+     * Checkpoints and statistics of one range of the file.
+     */
+    private static class RangeResult {
+        private final ColumnStats[] stats;
+        private long[] offsets = new long[16];
+        private int size;
+        private long count;
+
+        private RangeResult(int columns) {
+            stats = new ColumnStats[columns];
+            for (int i = 0; i < columns; i++) {
+                stats[i] = new ColumnStats();
+            }
+        }
+
+        private void addCheckpoint(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package lehoai.csvtitan.service.parse;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Byte-by-byte {@link StructuralScanner}, used when the Vector API is not available.
+ */
+class ScalarStructuralScanner implements StructuralScanner {
+
+    private final byte delimiter;
+    private final byte quote;
+
+    ScalarStructuralScanner(byte delimiter, byte quote) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+    }
+
+    @Override
+    public void scanBlock(MemorySegment segment, long blockStart, long limit, long[] masks) {
+        long fieldEnds = 0;
+        long quotes = 0;
+        int length = (int) Math.min(BLOCK_SIZE, limit - blockStart);
+        for (int i = 0; i < length; i++) {
+            byte b = segment.get(ValueLayout.JAVA_BYTE, blockStart + i);
+            if (b == delimiter || b == '\n' || b == '\r') {
+                fieldEnds |= 1L << i;
+            } else if (b == quote) {
+                quotes |= 1L << i;
+            }
+        }
+        masks[FIELD_END] = fieldEnds;
+        masks[QUOTE] = quotes;
+    }
+}
@@ -0,0 +1,56 @@
+package lehoai.csvtitan.service.parse;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+
+/**
+ * Chooses once, when the class is initialized, the {@link StructuralScanner} implementation
+ * returned by {@link StructuralScanner#create(byte, byte)}.
+ */
+final class ScannerFactory {
+
+    private static final String VECTOR_SCANNER = "lehoai.csvtitan.service.parse.VectorStructuralScanner";
+
+    /**
+     * Constructor of the vectorized scanner, {@code null} when the scalar scanner must be used.
+     */
+    private static final MethodHandle VECTOR_CONSTRUCTOR = findVectorConstructor();
+
+    private ScannerFactory() {
+    }
+
+    static StructuralScanner create(byte delimiter, byte quote) {
+        if (VECTOR_CONSTRUCTOR == null) {
+            return new ScalarStructuralScanner(delimiter, quote);
+        }
+        try {
+            return (StructuralScanner) VECTOR_CONSTRUCTOR.invokeExact(delimiter, quote);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Can't create the vectorized scanner", e);
+        }
+    }
+
+    private static MethodHandle findVectorConstructor() {
+        Optional<Module> vector = ModuleLayer.boot().findModule("jdk.incubator.vector");
+        if (vector.isEmpty()) {
+            return null;
+        }
+        try {
+            // The module is not required by module-info, so that the default build doesn't use an incubating module.
+            ScannerFactory.class.getModule().addReads(vector.get());
+            MethodHandle constructor = MethodHandles.lookup()
+                    .findConstructor(Class.forName(VECTOR_SCANNER), MethodType.methodType(void.class, byte.class, byte.class))
+                    .asType(MethodType.methodType(StructuralScanner.class, byte.class, byte.class));
+            // Creating one scanner initializes the Vector API, which fails if it isn't usable on this runtime
+            StructuralScanner _ = (StructuralScanner) constructor.invokeExact((byte) ',', (byte) '"');
+            return constructor;
+        } catch (ReflectiveOperationException | LinkageError _) {
+            // Built without the vector profile or Vector API not usable on this runtime, use the scalar scanner
+            return null;
+        } catch (Throwable e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package lehoai.csvtitan.service.parse;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Finds the structural characters of a CSV file 64 bytes at a time.
+ * For a block of the file, a scanner builds two bitmaps where bit {@code i} describes byte {@code blockStart + i}:
+ * one for the bytes that end a field (delimiter, CR, LF) and one for the quotes.
+ * The tokenizer then jumps from one set bit to the next instead of testing every byte.
+ */
+public interface StructuralScanner {
+
+    /**
+     * Number of bytes described by one bitmap.
+     */
+    int BLOCK_SIZE = 64;
+
+    /**
+     * Index in the result array of the field end bitmap.
+     */
+    int FIELD_END = 0;
+
+    /**
+     * Index in the result array of the quote bitmap.
+     */
+    int QUOTE = 1;
+
+    /**
+     * Builds the bitmaps of the block starting at {@code blockStart}.
+     * Bits for positions at or after {@code limit} are cleared.
+     *
+     * @param segment    the mapped file
+     * @param blockStart offset of the first byte of the block
+     * @param limit      offset after the last readable byte
+     * @param masks      array of at least two elements receiving the {@link #FIELD_END} and {@link #QUOTE} bitmaps
+     */
+    void scanBlock(MemorySegment segment, long blockStart, long limit, long[] masks);
+
+    /**
+     * Creates the fastest scanner available: vectorized when the application is built with the {@code vector}
+     * profile, which adds {@code src/main/java-vector}, and the {@code jdk.incubator.vector} module is present
+     * (run with {@code --add-modules jdk.incubator.vector}), scalar otherwise.
+     * The implementation is chosen once per JVM.
+     *
+     * @param delimiter the field delimiter
+     * @param quote     the quote character
+     * @return a scanner
+     */
+    static StructuralScanner create(byte delimiter, byte quote) {
+        return ScannerFactory.create(delimiter, quote);
+    }
+
+    /**
+     * Creates the scalar scanner, which works on every runtime.
+     *
+     * @param delimiter the field delimiter
+     * @param quote     the quote character
+     * @return a scanner
+     */
+    static StructuralScanner scalar(byte delimiter, byte quote) {
+        return new ScalarStructuralScanner(delimiter, quote);
+    }
+}
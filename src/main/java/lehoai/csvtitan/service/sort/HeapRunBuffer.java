@@ -0,0 +1,90 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Run buffer holding rows as {@link RunRecord} objects on the heap, up to an estimate of their retained size.
+ * Fixed-width keys are sorted with {@link RadixSort}.
+ */
+class HeapRunBuffer implements RunBuffer {
+
+    private final List<RunRecord> records = new ArrayList<>();
+    private final long budget;
+    private final int maxRows;
+    private final int keyWidth;
+    private long retained;
+
+    /**
+     * @param budget   estimated heap the rows may retain, see {@link RunRecord#retainedSize()}
+     * @param maxRows  maximum number of rows
+     * @param keyWidth width of the keys if they are radix sorted, see {@link SortKeyEncoder#fixedWidth()}, or 0
+     */
+    HeapRunBuffer(long budget, int maxRows, int keyWidth) {
+        this.budget = budget;
+        this.maxRows = maxRows;
+        this.keyWidth = keyWidth;
+    }
+
+    @Override
+    public boolean add(RunRecord record) {
+        if (!records.isEmpty() && (retained >= budget || records.size() >= maxRows)) {
+            return false;
+        }
+        records.add(record);
+        retained += record.retainedSize();
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public boolean isOrdered() {
+        for (int i = 1; i < records.size(); i++) {
+            if (SortKeyEncoder.compare(records.get(i - 1).key(), records.get(i).key()) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] firstKey() {
+        return records.getFirst().key();
+    }
+
+    @Override
+    public byte[] lastKey() {
+        return records.getLast().key();
+    }
+
+    @Override
+    public void sort() {
+        if (keyWidth == 0) {
+            records.sort(RunRecord.KEY_ORDER); // Stable
+            return;
+        }
+        // Runs are already sorted concurrently, so a single thread sorts each one.
+        RunRecord[] sorted = records.toArray(new RunRecord[0]);
+        RadixSort.sort(sorted, keyWidth, 1);
+        records.clear();
+        records.addAll(Arrays.asList(sorted));
+    }
+
+    @Override
+    public void writeTo(MergePlanner.RecordSink sink) throws IOException {
+        for (RunRecord record : records) {
+            sink.write(record);
+        }
+    }
+
+    @Override
+    public void close() {
+        records.clear();
+    }
+}
@@ -0,0 +1,106 @@
+package lehoai.csvtitan.service.sort;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tournament tree of losers used to merge k sorted sources.
+ * Every internal node remembers the loser of the match played there and the overall winner is kept apart,
+ * so replacing the winner's head only replays the matches on its path to the root: log2(k) comparisons per row.
+ * An exhausted source is represented by a {@code null} head and loses every match.
+ * Ties are won by the source with the lowest index, which keeps the merge stable.
+ *
+ * @param <T> the type of the source heads
+ */
+class LoserTree<T> {
+
+    private final Comparator<? super T> comparator;
+    private final Object[] heads;
+    private final int[] tree; // tree[0] is the winner, tree[1..k-1] the losers of the internal nodes.
+    private final int k;
+
+    /**
+     * Builds the tree from the first element of every source.
+     *
+     * @param heads      the first element of every source, {@code null} for an empty source
+     * @param comparator the order of the merge
+     */
+    LoserTree(List<T> heads, Comparator<? super T> comparator) {
+        this.comparator = comparator;
+        this.k = Math.max(1, heads.size());
+        this.heads = new Object[k];
+        for (int i = 0; i < heads.size(); i++) {
+            this.heads[i] = heads.get(i);
+        }
+        this.tree = new int[k];
+
+        int[] winners = new int[2 * k];
+        for (int i = 0; i < k; i++) {
+            winners[k + i] = i;
+        }
+        for (int node = k - 1; node >= 1; node--) {
+            int left = winners[2 * node];
+            int right = winners[2 * node + 1];
+            if (beats(left, right)) {
+                winners[node] = left;
+                tree[node] = right;
+            } else {
+                winners[node] = right;
+                tree[node] = left;
+            }
+        }
+        tree[0] = k == 1 ? 0 : winners[1];
+    }
+
+    /**
+     * @return true when every source is exhausted
+     */
+    boolean isEmpty() {
+        return heads[tree[0]] == null;
+    }
+
+    /**
+     * @return the index of the source holding the smallest head
+     */
+    int winner() {
+        return tree[0];
+    }
+
+    /**
+     * @return the smallest head
+     */
+    @SuppressWarnings("unchecked")
+    T peek() {
+        return (T) heads[tree[0]];
+    }
+
+    /**
+     * Replaces the head of the winning source with its next element and replays its path to the root.
+     *
+     * @param next the next element of the winning source, or {@code null} if it is exhausted
+     */
+    void replace(T next) {
+        int winner = tree[0];
+        heads[winner] = next;
+        for (int node = (winner + k) / 2; node >= 1; node /= 2) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean beats(int a, int b) {
+        if (heads[a] == null) {
+            return false;
+        }
+        if (heads[b] == null) {
+            return true;
+        }
+        int cmp = comparator.compare((T) heads[a], (T) heads[b]);
+        return cmp < 0 || (cmp == 0 && a < b);
+    }
+}
@@ -0,0 +1,157 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plans the merge of sorted runs so that no merge reads more than {@link SortOptions#maxFanIn} runs at once.
+ * While there are too many runs, consecutive groups of runs are merged into intermediate runs, several groups
+ * at the same time; the final merge then reads the remaining runs. Merging consecutive runs keeps equal keys
+ * in input order. The read buffers of a merge share the memory budget of the sort.
+ */
+class MergePlanner {
+
+    static final int MIN_BUFFER_SIZE = 8 * 1024;
+    static final int MAX_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final SortOptions options;
+
+    /**
+     * Receives the records of a merge in order.
+     */
+    interface RecordSink {
+        void write(RunRecord record) throws IOException;
+    }
+
+    /**
+     * Constructs a planner.
+     *
+     * @param options fan-in, memory budget and parallelism of the sort
+     */
+    MergePlanner(SortOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Merges groups of runs into intermediate runs until at most {@link SortOptions#maxFanIn} are left.
+     * The list is updated after every pass: merged runs are deleted and replaced by their output.
+     * If a pass fails, the runs it has already written are added to the list so that the caller deletes them.
+     *
+     * @param runs the runs, in file order
+     * @throws IOException if a run can't be read or written
+     */
+    void reduce(List<Path> runs) throws IOException {
+        int fanIn = Math.max(2, options.maxFanIn);
+        while (runs.size() > fanIn) {
+            int groups = (runs.size() + fanIn - 1) / fanIn;
+            int groupSize = (runs.size() + groups - 1) / groups; // Balanced groups
+            int parallelism = Math.min(groups, options.effectiveParallelism());
+            int bufferSize = bufferSize(groupSize + 1, parallelism);
+
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread thread = new Thread(r, "sort-merge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            List<Future<Path>> merged = new ArrayList<>();
+            List<Path> next = new ArrayList<>();
+            try {
+                for (int from = 0; from < runs.size(); from += groupSize) {
+                    List<Path> group = List.copyOf(runs.subList(from, Math.min(runs.size(), from + groupSize)));
+                    merged.add(workers.submit(() -> mergeToRun(group, bufferSize)));
+                }
+                for (Future<Path> run : merged) {
+                    next.add(run.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Merge interrupted");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            } finally {
+                workers.shutdownNow();
+                try {
+                    workers.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException _) {
+                    Thread.currentThread().interrupt();
+                }
+                if (next.size() < merged.size()) {
+                    for (Future<Path> run : merged) {
+                        if (run.state() == Future.State.SUCCESS) {
+                            runs.add(run.resultNow());
+                        }
+                    }
+                }
+            }
+
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+            runs.addAll(next);
+        }
+    }
+
+    /**
+     * Merges runs, giving every record to the sink in key order.
+     * The run heads are kept in a {@link LoserTree}, so every record costs log2(runs) comparisons.
+     *
+     * @param runs       the runs, in file order
+     * @param bufferSize size of the read buffer of every run
+     * @param sink       receives the records
+     * @throws IOException if a run can't be read or the sink fails
+     */
+    void merge(List<Path> runs, int bufferSize, RecordSink sink) throws IOException {
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            List<RunRecord> heads = new ArrayList<>();
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, bufferSize, options.compressRuns);
+                readers.add(reader);
+                heads.add(reader.next());
+            }
+
+            LoserTree<RunRecord> tree = new LoserTree<>(heads, RunRecord.KEY_ORDER);
+            while (!tree.isEmpty()) {
+                sink.write(tree.peek());
+                tree.replace(readers.get(tree.winner()).next());
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Sizes the buffers of concurrent merges so that together they stay within the memory budget.
+     *
+     * @param buffersPerMerge  number of buffers of a merge, its inputs and its output
+     * @param concurrentMerges number of merges running at the same time
+     * @return the size of one buffer, in bytes
+     */
+    int bufferSize(int buffersPerMerge, int concurrentMerges) {
+        long size = options.budget() / ((long) buffersPerMerge * concurrentMerges);
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, size));
+    }
+
+    private Path mergeToRun(List<Path> group, int bufferSize) throws IOException {
+        Path output = Files.createTempFile("merge_", ".run");
+        try (RunWriter writer = new RunWriter(output, bufferSize, options.compressRuns)) {
+            merge(group, bufferSize, writer::write);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(output);
+            throw e;
+        }
+        return output;
+    }
+}
@@ -1,29 +1,74 @@
 package lehoai.csvtitan.service.sort;
 
 import lehoai.csvtitan.service.CsvReader;
-import lehoai.csvtitan.service.CsvWriter;
+import lehoai.csvtitan.service.MappedCsvReader;
 import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.core.Schema;
+import lehoai.csvtitan.service.core.SchemaDetector;
+import lehoai.csvtitan.service.core.Type;
+import lehoai.csvtitan.service.parse.CsvRow;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Implements an external merge sort algorithm for sorting large CSV files.
  * Splits input data into smaller chunks, sorts them, and merges them efficiently.
+ * Rows are compared through binary keys built once per row by a {@link SortKeyEncoder}, from one or several
+ * columns, so numbers and dates are sorted by value and a multi-column sort is a single byte comparison.
+ * <p>
+ * Sorted chunks are spilled as binary runs holding the key and the bytes of every row (see {@link RunWriter}),
+ * so the merge never parses CSV again. When the file can be tokenized at byte level ({@link MappedCsv#supports(CsvConfig)}),
+ * rows are copied from the input to the output byte for byte; otherwise they are formatted once while spilling.
+ * Files that fit in the memory budget skip the spill altogether, and chunks that are already ordered are not sorted.
+ * With {@link SortOptions#tagSort}, only keys and row positions are sorted and rows are copied from the mapped file
+ * in key order at the end. With {@link SortOptions#partitions}, the file is split into key ranges that are sorted
+ * in parallel.
  */
 public class MergeSort {
 
-    private static final int CHUNK_SIZE = 300000; // Number of rows per chunk.
-    private static final int THREADS_SIZE = 4; // Number of threads to process chunks concurrently.
-    private CsvReader csvReader;
+    private static final String LINE_SEPARATOR = "\r\n"; // As written by CSVPrinter
+    private static final int SAMPLE_ROWS = 1000;
+    private SortKeyEncoder keyEncoder;
 
     /**
      * Sorts a CSV file based on the specified column and outputs the result to another file.
+     * The column is compared according to the type detected from its first rows, and its values that
+     * don't have that type are sorted as strings after the others.
      *
      * @param fileInput    Path to the input CSV file.
      * @param config       CSV configuration settings.
@@ -33,141 +78,792 @@ public class MergeSort {
      * @throws IOException If an I/O error occurs.
      */
     public void sort(String fileInput, CsvConfig config, String outputFile, int sortColIndex, boolean isAsc) throws IOException {
-        config.bufferedLines = CHUNK_SIZE;
-        this.csvReader = new CsvReader(fileInput, config);
-        this.csvReader.readMeta();
-        List<Path> sortedChunks = splitAndSortChunks(sortColIndex, isAsc);
-        mergeSortedChunks(sortedChunks, outputFile, sortColIndex, isAsc);
-        deleteTempFiles(sortedChunks);
+        sort(fileInput, config, outputFile, new SortColumn(sortColIndex, null, isAsc), new SortOptions());
     }
 
     /**
      * Sorts a CSV file based on the specified column and outputs the result to another file.
+     * The column is compared according to the type detected from its first rows, and its values that
+     * don't have that type are sorted as strings after the others.
      *
      * @param fileInput    Path to the input CSV file.
      * @param config       CSV configuration settings.
      * @param outputFile   Path to the output CSV file.
      * @param sortColIndex Index of the column to sort by.
      * @param isAsc        True for ascending order, false for descending order.
-     * @param chunkSize    Chunk size use to split data source file
+     * @param chunkSize    Maximum number of rows in a chunk, within the default memory budget.
      * @throws IOException If an I/O error occurs.
      */
     public void sort(String fileInput, CsvConfig config, String outputFile, int sortColIndex, boolean isAsc, int chunkSize) throws IOException {
-        config.bufferedLines = chunkSize;
-        this.csvReader = new CsvReader(fileInput, config);
-        this.csvReader.readMeta();
-        List<Path> sortedChunks = splitAndSortChunks(sortColIndex, isAsc);
-        mergeSortedChunks(sortedChunks, outputFile, sortColIndex, isAsc);
-        deleteTempFiles(sortedChunks);
+        SortOptions options = new SortOptions();
+        options.maxRunRows = chunkSize;
+        sort(fileInput, config, outputFile, new SortColumn(sortColIndex, null, isAsc), options);
     }
 
     /**
-     * Splits the input CSV data into sorted chunks.
+     * Sorts a CSV file based on the specified column and outputs the result to another file.
      *
-     * @param sortColIndex Index of the column to sort by.
-     * @param isAsc        True for ascending order, false for descending order.
-     * @return A list of paths to the sorted chunk files.
+     * @param fileInput  Path to the input CSV file.
+     * @param config     CSV configuration settings.
+     * @param outputFile Path to the output CSV file.
+     * @param sortColumn Column to sort by, with its type, direction and null ordering.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void sort(String fileInput, CsvConfig config, String outputFile, SortColumn sortColumn) throws IOException {
+        sort(fileInput, config, outputFile, sortColumn, new SortOptions());
+    }
+
+    /**
+     * Sorts a CSV file based on the specified column and outputs the result to another file.
+     *
+     * @param fileInput  Path to the input CSV file.
+     * @param config     CSV configuration settings.
+     * @param outputFile Path to the output CSV file.
+     * @param sortColumn Column to sort by, with its type, direction and null ordering.
+     * @param options    Memory budget and parallelism of the sort.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void sort(String fileInput, CsvConfig config, String outputFile, SortColumn sortColumn, SortOptions options) throws IOException {
+        sort(fileInput, config, outputFile, new SortSpec(sortColumn), options);
+    }
+
+    /**
+     * Sorts a CSV file on several columns and outputs the result to another file.
+     *
+     * @param fileInput  Path to the input CSV file.
+     * @param config     CSV configuration settings.
+     * @param outputFile Path to the output CSV file.
+     * @param sortSpec   Columns to sort by, most significant first.
+     * @param options    Memory budget and parallelism of the sort.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void sort(String fileInput, CsvConfig config, String outputFile, SortSpec sortSpec, SortOptions options) throws IOException {
+        if (sortSpec.columns.isEmpty()) {
+            throw new IllegalArgumentException("No sort column");
+        }
+        Charset charset = Charset.forName(config.encode);
+        List<Path> sortedChunks = new ArrayList<>();
+        try {
+            if (MappedCsv.supports(config)) {
+                MappedCsvReader reader = new MappedCsvReader(fileInput, config);
+                try {
+                    reader.readMeta();
+                    prepare(sortSpec, reader.getSchemas(), fileInput, config);
+                    CsvRow header = reader.getMappedCsv().newRow();
+                    reader.getMappedCsv().tokenizer().next(header);
+                    // Rows are raw bytes of the input, already in its encoding, or tags pointing to them.
+                    byte[] lineSeparator = LINE_SEPARATOR.getBytes(charset);
+                    MemorySegment input = reader.getMappedCsv().segment();
+                    Function<OutputStream, RowSink> sinkFor = out -> row -> {
+                        if (options.tagSort) {
+                            ByteBuffer tag = ByteBuffer.wrap(row);
+                            long offset = tag.getLong();
+                            out.write(input.asSlice(offset, tag.getInt()).toArray(ValueLayout.JAVA_BYTE));
+                        } else {
+                            out.write(row);
+                        }
+                        out.write(lineSeparator);
+                    };
+                    byte[] headerLine = ByteBuffer.allocate(header.getRawBytes().length + lineSeparator.length)
+                            .put(header.getRawBytes()).put(lineSeparator).array();
+                    MappedRowReader rows = new MappedRowReader(reader, options.tagSort);
+                    if (options.partitions > 1 && options.limit <= 0) {
+                        sortPartitioned(reader, rows, headerLine, outputFile, options, sinkFor);
+                    } else {
+                        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(Paths.get(outputFile)), RunWriter.BUFFER_SIZE)) {
+                            out.write(headerLine);
+                            sortRows(rows, options, sortedChunks, sinkFor.apply(out));
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } else {
+                CsvReader reader = new CsvReader(fileInput, config);
+                try {
+                    reader.readMeta();
+                    prepare(sortSpec, reader.getSchemas(), fileInput, config);
+                    CSVFormat format = CSVFormat.Builder.create().setDelimiter(config.delimiter).setQuote('"').build();
+                    // Rows are formatted as UTF-8, they are transcoded on the way out.
+                    try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(outputFile)), charset), RunWriter.BUFFER_SIZE)) {
+                        writer.write(format.format(reader.getRawHeader().toArray()));
+                        writer.write(LINE_SEPARATOR);
+                        sortRows(new ParsedRowReader(reader, format), options, sortedChunks, row -> {
+                            writer.write(new String(row, StandardCharsets.UTF_8));
+                            writer.write(LINE_SEPARATOR);
+                        });
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            deleteTempFiles(sortedChunks);
+        }
+    }
+
+    /**
+     * Checks the sort columns and completes them from a sample of the first rows: the type of the columns
+     * without one, and the date format of the date columns without one.
+     */
+    private void prepare(SortSpec sortSpec, Schema[] schemas, String fileInput, CsvConfig config) throws IOException {
+        List<CSVRecord> sample = null;
+        for (SortColumn column : sortSpec.columns) {
+            if (column.index < 0 || column.index >= schemas.length) {
+                throw new IllegalArgumentException("No column " + column.index + ", the file has " + schemas.length);
+            }
+            if (column.type != null && (column.type != Type.DATE || column.dateFormat != null)) {
+                continue;
+            }
+            if (sample == null) {
+                sample = sample(fileInput, config);
+            }
+            List<String> values = new ArrayList<>();
+            for (CSVRecord record : sample) {
+                if (column.index < record.size() && !record.get(column.index).isEmpty()) {
+                    values.add(record.get(column.index));
+                }
+            }
+            if (column.type == null) {
+                column.type = detectType(values);
+                column.unparsedAsString = true;
+            }
+            if (column.type == Type.DATE && column.dateFormat == null) {
+                column.dateFormat = SortKeyEncoder.detectDateFormat(values);
+            }
+        }
+        this.keyEncoder = new SortKeyEncoder(sortSpec);
+    }
+
+    /**
+     * Reads the first data rows of a file.
+     */
+    private static List<CSVRecord> sample(String fileInput, CsvConfig config) throws IOException {
+        CsvReader reader = new CsvReader(fileInput, config);
+        try {
+            reader.readMeta();
+            List<CSVRecord> sample = new ArrayList<>();
+            while (sample.size() < SAMPLE_ROWS && reader.hasNext()) {
+                sample.add(reader.readLine());
+            }
+            return sample;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Finds the type shared by every value: integers mixed with decimals are {@code DOUBLE},
+     * and any other mix is {@code STRING}.
+     */
+    private static Type detectType(List<String> values) {
+        SchemaDetector detector = new SchemaDetector();
+        Type result = null;
+        for (String value : values) {
+            Type type = detector.detectType(value);
+            if (result == null || result == type) {
+                result = type;
+            } else if ((result == Type.INT || result == Type.DOUBLE) && (type == Type.INT || type == Type.DOUBLE)) {
+                result = Type.DOUBLE;
+            } else {
+                return Type.STRING;
+            }
+        }
+        return result == null ? Type.STRING : result;
+    }
+
+    /**
+     * Sorts the rows, either fully or, with a row limit, keeping only the first rows.
+     * Rows are first buffered up to the whole memory budget: if the file fits, the buffer is sorted in parallel
+     * and written directly, without temporary files. Otherwise the buffer is handed over to run generation,
+     * done as set by {@link SortOptions#runStrategy}.
+     *
+     * @param rows         The rows of the file.
+     * @param options      Memory budget, parallelism and row limit of the sort.
+     * @param sortedChunks Receives the paths to the temporary files.
+     * @param output       Receives the rows in order.
+     * @throws IOException If an I/O error occurs.
      */
-    private List<Path> splitAndSortChunks(int sortColIndex, boolean isAsc) {
-        List<Path> chunkFiles = new ArrayList<>();
+    private void sortRows(RowReader rows, SortOptions options, List<Path> sortedChunks, RowSink output) throws IOException {
+        if (options.limit > 0) {
+            topRows(rows, options.limit, output);
+            return;
+        }
+        if (options.offHeap && options.runStrategy == RunStrategy.CHUNK) {
+            sortRowsOffHeap(rows, options, sortedChunks, output);
+            return;
+        }
+
+        long budget = options.budget();
+        int maxRows = options.maxRunRows > 0 ? options.maxRunRows : Integer.MAX_VALUE;
+        ArrayDeque<RunRecord> buffered = new ArrayDeque<>();
+        long retained = 0;
         boolean isEof = false;
+        while (retained < budget && buffered.size() < maxRows) {
+            if (!rows.next()) {
+                isEof = true;
+                break;
+            }
+            RunRecord record = new RunRecord(rows.key(), rows.row());
+            buffered.add(record);
+            retained += record.retainedSize();
+        }
+
+        if (isEof) {
+            RunRecord[] records = buffered.toArray(new RunRecord[0]);
+            buffered.clear();
+            if (!isOrdered(Arrays.asList(records))) {
+                int keyWidth = keyEncoder.fixedWidth();
+                if (keyWidth > 0) {
+                    RadixSort.sort(records, keyWidth, Math.max(1, options.parallelism));
+                } else {
+                    Arrays.parallelSort(records, RunRecord.KEY_ORDER); // Stable
+                }
+            }
+            for (RunRecord record : records) {
+                output.write(record.row());
+            }
+            return;
+        }
 
-        while (!isEof) {
-            List<Thread> threads = new ArrayList<>();
-            List<List<CSVRecord>> chunkDataList = new ArrayList<>();
+        // Buffered rows are taken first, releasing them as the runs fill up.
+        Supplier<RunRecord> reader = () -> {
+            if (!buffered.isEmpty()) {
+                return buffered.poll();
+            }
+            return rows.next() ? new RunRecord(rows.key(), rows.row()) : null;
+        };
+        if (options.runStrategy == RunStrategy.REPLACEMENT_SELECTION) {
+            new ReplacementSelection(options).generateRuns(reader, sortedChunks);
+        } else {
+            splitAndSortChunks(reader, options, sortedChunks);
+        }
+        mergeSortedChunks(sortedChunks, options, record -> output.write(record.row()));
+    }
 
-            for (int i = 0; i < THREADS_SIZE; i++) {
-                List<CSVRecord> chunkData = csvReader.readLines();
-                if (chunkData.isEmpty()) {
-                    isEof = true;
+    /**
+     * Sorts the rows with {@link RowArena off-heap buffers}. The first buffer may grow to the whole budget: if the file
+     * fits, it is sorted and written at once, otherwise it is spilled as the first run and freed before the next
+     * runs are buffered.
+     *
+     * @param rows         The rows of the file.
+     * @param options      Memory budget, parallelism and strategy of the sort.
+     * @param sortedChunks Receives the paths to the temporary run files, to be deleted by the caller.
+     * @param output       Receives the rows in order.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void sortRowsOffHeap(RowReader rows, SortOptions options, List<Path> sortedChunks, RowSink output) throws IOException {
+        int maxRows = options.maxRunRows > 0 ? options.maxRunRows : Integer.MAX_VALUE;
+        ArrayDeque<RunRecord> pending = new ArrayDeque<>(1);
+        try (RowArena buffer = new RowArena(options.budget(), maxRows)) {
+            while (rows.next()) {
+                RunRecord record = new RunRecord(rows.key(), rows.row());
+                if (!buffer.add(record)) {
+                    pending.add(record);
                     break;
                 }
-                chunkDataList.add(chunkData);
             }
+            if (!buffer.isOrdered()) {
+                buffer.sort();
+            }
+            if (pending.isEmpty()) {
+                buffer.writeTo(record -> output.write(record.row()));
+                return;
+            }
+            Path run = Files.createTempFile("chunk_", ".run");
+            sortedChunks.add(run);
+            try (RunWriter runWriter = new RunWriter(run, RunWriter.BUFFER_SIZE, options.compressRuns)) {
+                buffer.writeTo(runWriter::write);
+            }
+        }
 
-            for (List<CSVRecord> chunkData : chunkDataList) {
-                threads.add(new Thread(() -> {
-                    try {
-                        chunkFiles.add(writeSortedChunk(chunkData, sortColIndex, isAsc));
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+        Supplier<RunRecord> reader = () -> {
+            if (!pending.isEmpty()) {
+                return pending.poll();
+            }
+            return rows.next() ? new RunRecord(rows.key(), rows.row()) : null;
+        };
+        splitAndSortChunks(reader, options, sortedChunks);
+        mergeSortedChunks(sortedChunks, options, record -> output.write(record.row()));
+    }
+
+    /**
+     * Sorts a mapped file by key ranges, so that every core also takes part in the merge.
+     * A first pass samples the keys to pick splitters, a second one routes every row to the unsorted spill
+     * of its range, then the ranges are sorted independently on {@link SortOptions#effectiveParallelism()} threads,
+     * each with its share of the memory budget. The sorted ranges are either appended to the output file in order,
+     * or kept as numbered part files.
+     *
+     * @param reader     The reader of the file, positioned on the first data line.
+     * @param rows       The rows of the file.
+     * @param headerLine Bytes of the header and its line separator.
+     * @param outputFile Path to the output CSV file.
+     * @param options    Number of partitions, memory budget and parallelism of the sort.
+     * @param sinkFor    Creates the sink writing rows to an output stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void sortPartitioned(MappedCsvReader reader, RowReader rows, byte[] headerLine, String outputFile,
+                                 SortOptions options, Function<OutputStream, RowSink> sinkFor) throws IOException {
+        RangePartitioner.Sampler sampler = new RangePartitioner.Sampler(options.partitions * RangePartitioner.SAMPLES_PER_PARTITION);
+        while (rows.next()) {
+            sampler.accept(rows.key());
+        }
+        reader.rewind();
+        RangePartitioner partitioner = new RangePartitioner(sampler.sample(), sampler.size(), options.partitions);
+
+        List<Path> tempFiles = new ArrayList<>();
+        try {
+            Path[] partitionFiles = new Path[partitioner.partitions()];
+            RunWriter[] writers = new RunWriter[partitionFiles.length];
+            try {
+                for (int i = 0; i < partitionFiles.length; i++) {
+                    partitionFiles[i] = Files.createTempFile("partition_", ".run");
+                    tempFiles.add(partitionFiles[i]);
+                    writers[i] = new RunWriter(partitionFiles[i], RunWriter.BUFFER_SIZE, options.compressRuns);
+                }
+                while (rows.next()) {
+                    writers[partitioner.partitionOf(rows.key())].write(new RunRecord(rows.key(), rows.row()));
+                }
+            } finally {
+                for (RunWriter writer : writers) {
+                    if (writer != null) {
+                        writer.close();
                     }
-                }));
+                }
             }
 
-            threads.forEach(Thread::start);
-            for (Thread thread : threads) {
+            int parallelism = Math.min(partitionFiles.length, options.effectiveParallelism());
+            SortOptions partitionOptions = new SortOptions();
+            partitionOptions.memoryBudget = Math.max(1, options.budget() / parallelism);
+            partitionOptions.parallelism = 1;
+            partitionOptions.maxRunRows = options.maxRunRows;
+            partitionOptions.maxFanIn = options.maxFanIn;
+            partitionOptions.compressRuns = options.compressRuns;
+            partitionOptions.runStrategy = options.runStrategy;
+            partitionOptions.offHeap = options.offHeap;
+
+            Path[] segments = new Path[partitionFiles.length];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = options.partFiles ? partFile(outputFile, i) : Files.createTempFile("segment_", ".csv");
+                if (!options.partFiles) {
+                    tempFiles.add(segments[i]);
+                }
+            }
+            ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread thread = new Thread(r, "sort-partition");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<?>> sorted = new ArrayList<>();
+                for (int i = 0; i < segments.length; i++) {
+                    int partition = i;
+                    sorted.add(workers.submit(() -> {
+                        sortPartition(partitionFiles[partition], segments[partition],
+                                options.partFiles ? headerLine : null, partitionOptions, sinkFor);
+                        return null;
+                    }));
+                }
+                for (Future<?> partition : sorted) {
+                    partition.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Sort interrupted");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            } finally {
+                workers.shutdownNow();
                 try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    workers.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException _) {
+                    Thread.currentThread().interrupt();
                 }
             }
+
+            if (!options.partFiles) {
+                try (FileChannel out = FileChannel.open(Paths.get(outputFile), StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    out.write(ByteBuffer.wrap(headerLine));
+                    for (Path segment : segments) {
+                        try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ)) {
+                            long size = in.size();
+                            for (long position = 0; position < size; ) {
+                                position += in.transferTo(position, size - position, out);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            deleteTempFiles(tempFiles);
         }
+    }
 
-        return chunkFiles;
+    /**
+     * Sorts one range of a partitioned sort into its output file.
+     *
+     * @param partitionFile Unsorted spill of the range.
+     * @param target        Output file of the range.
+     * @param headerLine    Header to write first, or {@code null}.
+     * @param options       The share of the sort resources given to the range.
+     * @param sinkFor       Creates the sink writing rows to an output stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void sortPartition(Path partitionFile, Path target, byte[] headerLine, SortOptions options,
+                               Function<OutputStream, RowSink> sinkFor) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        try (RunReader in = new RunReader(partitionFile, RunWriter.BUFFER_SIZE, options.compressRuns);
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), RunWriter.BUFFER_SIZE)) {
+            if (headerLine != null) {
+                out.write(headerLine);
+            }
+            sortRows(new SpilledRowReader(in), options, runs, sinkFor.apply(out));
+        } finally {
+            deleteTempFiles(runs);
+            Files.deleteIfExists(partitionFile);
+        }
     }
 
     /**
-     * Writes a sorted chunk of data to a temporary file.
+     * Names the part files of a partitioned sort after the output file: {@code out.csv} gives {@code out-00000.csv}, ...
      *
-     * @param chunk        List of CSV records to sort.
-     * @param sortColIndex Index of the column to sort by.
-     * @param isAsc        True for ascending order, false for descending order.
+     * @param outputFile Path to the output CSV file.
+     * @param part       Number of the part.
+     * @return the path to the part file
+     */
+    public static Path partFile(String outputFile, int part) {
+        Path output = Paths.get(outputFile);
+        String name = output.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String partName = dot > 0
+                ? name.substring(0, dot) + String.format("-%05d", part) + name.substring(dot)
+                : name + String.format("-%05d", part);
+        return output.resolveSibling(partName);
+    }
+
+    /**
+     * Streams the rows once, keeping the first {@code limit} of them in a bounded heap whose root is
+     * the last row kept. A row is only copied when its key beats the root, so nothing is spilled and
+     * memory stays proportional to the limit.
+     *
+     * @param rows   The rows of the file.
+     * @param limit  Number of rows to keep.
+     * @param output Receives the rows in order.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void topRows(RowReader rows, long limit, RowSink output) throws IOException {
+        int k = (int) Math.min(limit, Integer.MAX_VALUE - 8);
+        PriorityQueue<RankedRecord> heap = new PriorityQueue<>(Math.min(k, 1 << 16) + 1, RankedRecord.ORDER.reversed());
+        long seq = 0;
+        while (rows.next()) {
+            byte[] key = rows.key();
+            // On a tie the row read first stays, which keeps the order stable.
+            if (heap.size() < k) {
+                heap.add(new RankedRecord(new RunRecord(key, rows.row()), seq));
+            } else if (SortKeyEncoder.compare(key, heap.peek().record().key()) < 0) {
+                heap.poll();
+                heap.add(new RankedRecord(new RunRecord(key, rows.row()), seq));
+            }
+            seq++;
+        }
+
+        List<RankedRecord> top = new ArrayList<>(heap);
+        top.sort(RankedRecord.ORDER);
+        for (RankedRecord ranked : top) {
+            output.write(ranked.record().row());
+        }
+    }
+
+    /**
+     * Splits the input CSV data into sorted chunks, as a pipeline.
+     * The calling thread reads rows into a buffer until its size reaches the run budget (estimated retained heap,
+     * or bytes of an off-heap {@link RowArena} with {@link SortOptions#offHeap}),
+     * then hands it to a pool of {@link SortOptions#effectiveParallelism()} workers that sort and spill it,
+     * and starts filling the next one. A buffer can only be started when one of the
+     * {@code parallelism + 1} slots is free, so reading waits for the workers instead of exceeding the budget.
+     * Buffers that are already ordered are not sorted: they are written by the calling thread and, while every
+     * buffer continues the previous one, appended to the same run, so presorted input makes few long runs.
+     *
+     * @param reader     Reads the key and the bytes of the next row, {@code null} at the end of the file.
+     * @param options    Memory budget and parallelism of the sort.
+     * @param chunkFiles Receives the paths to the sorted chunk files, in file order, even when the sort fails.
+     * @throws IOException If a chunk can't be written.
+     */
+    private void splitAndSortChunks(Supplier<RunRecord> reader, SortOptions options, List<Path> chunkFiles) throws IOException {
+        int parallelism = options.effectiveParallelism();
+        long runBudget = options.runBudget();
+        int maxRows = options.maxRunRows > 0 ? options.maxRunRows : Integer.MAX_VALUE;
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "sort-run");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore buffers = new Semaphore(parallelism + 1);
+        // Chunks keep the order of the file, so equal keys stay in input order after the merge.
+        List<Future<Path>> runs = new ArrayList<>();
+
+        // An ordered buffer that follows an ordered buffer is appended to the same run, unsorted.
+        RunWriter orderedRun = null;
+        byte[] lastKey = null;
+
+        try {
+            RunRecord pending = null;
+            boolean isEof = false;
+            while (!isEof) {
+                buffers.acquire();
+                RunBuffer chunkData = options.offHeap
+                        ? new RowArena(runBudget, maxRows)
+                        : new HeapRunBuffer(runBudget, maxRows, keyEncoder.fixedWidth());
+                try {
+                    if (pending != null) {
+                        chunkData.add(pending);
+                        pending = null;
+                    }
+                    while (true) {
+                        RunRecord record = reader.get();
+                        if (record == null) {
+                            isEof = true;
+                            break;
+                        }
+                        if (!chunkData.add(record)) {
+                            pending = record;
+                            break;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    chunkData.close();
+                    buffers.release();
+                    throw e;
+                }
+                if (chunkData.size() == 0) {
+                    chunkData.close();
+                    buffers.release();
+                    break;
+                }
+
+                if (chunkData.isOrdered()) {
+                    try {
+                        if (orderedRun == null || SortKeyEncoder.compare(lastKey, chunkData.firstKey()) > 0) {
+                            if (orderedRun != null) {
+                                orderedRun.close();
+                            }
+                            Path tempFile = Files.createTempFile("chunk_", ".run");
+                            runs.add(CompletableFuture.completedFuture(tempFile));
+                            orderedRun = new RunWriter(tempFile, RunWriter.BUFFER_SIZE, options.compressRuns);
+                        }
+                        RunWriter run = orderedRun;
+                        chunkData.writeTo(run::write);
+                        lastKey = chunkData.lastKey();
+                    } finally {
+                        chunkData.close();
+                        buffers.release();
+                    }
+                    continue;
+                }
+                if (orderedRun != null) {
+                    orderedRun.close();
+                    orderedRun = null;
+                }
+
+                runs.add(workers.submit(() -> {
+                    try {
+                        return writeSortedChunk(chunkData, options);
+                    } finally {
+                        chunkData.close();
+                        buffers.release();
+                    }
+                }));
+            }
+            if (orderedRun != null) {
+                orderedRun.close();
+                orderedRun = null;
+            }
+            for (Future<Path> run : runs) {
+                run.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Sort interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } finally {
+            if (orderedRun != null) {
+                orderedRun.close();
+            }
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException _) {
+                Thread.currentThread().interrupt();
+            }
+            for (Future<Path> run : runs) {
+                if (run.state() == Future.State.SUCCESS) {
+                    chunkFiles.add(run.resultNow());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param records rows with their keys
+     * @return true if the keys never decrease
+     */
+    private static boolean isOrdered(List<RunRecord> records) {
+        for (int i = 1; i < records.size(); i++) {
+            if (SortKeyEncoder.compare(records.get(i - 1).key(), records.get(i).key()) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a sorted chunk of data to a temporary run file.
+     *
+     * @param chunk   Buffered rows to sort, with their keys.
+     * @param options Tells whether the run is compressed.
      * @return Path to the temporary file containing the sorted chunk.
      * @throws IOException If an I/O error occurs.
      */
-    private Path writeSortedChunk(List<CSVRecord> chunk, int sortColIndex, boolean isAsc) throws IOException {
-        Comparator<String> comparator = isAsc ? Comparator.naturalOrder() : Comparator.reverseOrder();
-        chunk.sort(Comparator.comparing(row -> row.get(sortColIndex), comparator));
+    private Path writeSortedChunk(RunBuffer chunk, SortOptions options) throws IOException {
+        chunk.sort();
 
-        Path tempFile = Files.createTempFile("chunk_", ".csv");
-        try (CsvWriter csvWriter = new CsvWriter(tempFile.toString(), csvReader.getConfig(), csvReader.getRawHeader())) {
-            csvWriter.write(chunk);
+        Path tempFile = Files.createTempFile("chunk_", ".run");
+        try (RunWriter runWriter = new RunWriter(tempFile, RunWriter.BUFFER_SIZE, options.compressRuns)) {
+            chunk.writeTo(runWriter::write);
         }
 
         return tempFile;
     }
 
+
     /**
-     * Merges sorted chunks into a single output file.
+     * Merges sorted chunks into a single output.
+     * Chunks are first merged in groups while there are more than {@link SortOptions#maxFanIn},
+     * then the remaining runs are merged and the bytes of every row go to the output as they are.
      *
-     * @param sortedChunks List of paths to sorted chunk files.
-     * @param outputFile   Path to the output file.
-     * @param sortColIndex Index of the column to sort by.
-     * @param isAsc        True for ascending order, false for descending order.
+     * @param sortedChunks List of paths to sorted chunk files, updated with the intermediate runs.
+     * @param options      Fan-in, memory budget and parallelism of the sort.
+     * @param output       Receives the rows in order.
      * @throws IOException If an I/O error occurs.
      */
-    private void mergeSortedChunks(List<Path> sortedChunks, String outputFile, int sortColIndex, boolean isAsc) throws IOException {
-        try (CsvWriter csvWriter = new CsvWriter(outputFile, csvReader.getConfig(), csvReader.getRawHeader())) {
-            Comparator<String> comparator = isAsc ? Comparator.naturalOrder() : Comparator.reverseOrder();
+    private void mergeSortedChunks(List<Path> sortedChunks, SortOptions options, MergePlanner.RecordSink output) throws IOException {
+        MergePlanner planner = new MergePlanner(options);
+        planner.reduce(sortedChunks);
+        planner.merge(sortedChunks, planner.bufferSize(sortedChunks.size() + 1, 1), output);
+    }
+
+    /**
+     * Iterates over the rows of the file, computing the key of every row and its bytes on demand.
+     */
+    private interface RowReader {
+
+        /**
+         * Moves to the next row.
+         *
+         * @return false at the end of the file
+         */
+        boolean next();
+
+        /**
+         * @return the sort key of the current row
+         */
+        byte[] key();
+
+        /**
+         * @return the bytes of the current row, without line terminator
+         */
+        byte[] row();
+    }
+
+    /**
+     * Writes the bytes of a row to the output.
+     */
+    private interface RowSink {
+        void write(byte[] row) throws IOException;
+    }
+
+    /**
+     * A row with its position in the file, to break ties.
+     */
+    private record RankedRecord(RunRecord record, long seq) {
+        static final Comparator<RankedRecord> ORDER = Comparator.comparing(RankedRecord::record, RunRecord.KEY_ORDER)
+                .thenComparingLong(RankedRecord::seq);
+    }
 
-            List<CsvReader> csvReaders = new ArrayList<>();
-            List<CSVRecord> tmpRecords = new ArrayList<>();
+    /**
+     * Rows of a memory-mapped file; row bytes are copied as they appear in the file.
+     * In tag mode, a row is only its offset and length in the file, 12 bytes, and it is copied from the file
+     * when the output is written.
+     */
+    private class MappedRowReader implements RowReader {
+        private final MappedCsvReader reader;
+        private final boolean tag;
+        private CsvRow row;
+        private byte[] key;
+
+        private MappedRowReader(MappedCsvReader reader, boolean tag) {
+            this.reader = reader;
+            this.tag = tag;
+        }
 
-            for (Path chunk : sortedChunks) {
-                CsvReader reader = new CsvReader(chunk.toString(), this.csvReader.getConfig());
-                csvReaders.add(reader);
-                tmpRecords.add(reader.readLine());
+        @Override
+        public boolean next() {
+            row = reader.readLine();
+            if (row == null) {
+                return false;
             }
+            key = keyEncoder.encode(i -> i < row.size() ? row.get(i) : null);
+            return true;
+        }
 
-            while (!csvReaders.isEmpty()) {
-                int minIndex = 0;
-                for (int i = 1; i < tmpRecords.size(); i++) {
-                    if (comparator.compare(tmpRecords.get(i).get(sortColIndex), tmpRecords.get(minIndex).get(sortColIndex)) < 0) {
-                        minIndex = i;
-                    }
-                }
+        @Override
+        public byte[] key() {
+            return key;
+        }
 
-                csvWriter.write(tmpRecords.get(minIndex));
-                if (csvReaders.get(minIndex).hasNext()) {
-                    tmpRecords.set(minIndex, csvReaders.get(minIndex).readLine());
-                } else {
-                    csvReaders.get(minIndex).close();
-                    csvReaders.remove(minIndex);
-                    tmpRecords.remove(minIndex);
-                }
+        @Override
+        public byte[] row() {
+            if (tag) {
+                return ByteBuffer.allocate(12).putLong(row.getStart()).putInt((int) (row.getEnd() - row.getStart())).array();
             }
+            return row.getRawBytes();
+        }
+    }
+
+    /**
+     * Rows parsed by {@link CsvReader}; row bytes are formatted again, as UTF-8.
+     */
+    private class ParsedRowReader implements RowReader {
+        private final CsvReader reader;
+        private final CSVFormat format;
+        private CSVRecord row;
+        private byte[] key;
+
+        private ParsedRowReader(CsvReader reader, CSVFormat format) {
+            this.reader = reader;
+            this.format = format;
+        }
+
+        @Override
+        public boolean next() {
+            if (!reader.hasNext()) {
+                return false;
+            }
+            row = reader.readLine();
+            key = keyEncoder.encode(i -> i < row.size() ? row.get(i) : null);
+            return true;
+        }
+
+        @Override
+        public byte[] key() {
+            return key;
+        }
+
+        @Override
+        public byte[] row() {
+            return format.format((Object[]) row.values()).getBytes(StandardCharsets.UTF_8);
         }
     }
 
@@ -179,10 +875,42 @@ public class MergeSort {
     private void deleteTempFiles(List<Path> files) {
         for (Path file : files) {
             try {
-                Files.delete(file);
+                Files.deleteIfExists(file);
             } catch (IOException e) {
                 System.err.println("Failed to delete temp file: " + file);
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Rows read back from an unsorted spill.
+     */
+    private static class SpilledRowReader implements RowReader {
+        private final RunReader reader;
+        private RunRecord record;
+
+        private SpilledRowReader(RunReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean next() {
+            try {
+                record = reader.next();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return record != null;
+        }
+
+        @Override
+        public byte[] key() {
+            return record.key();
+        }
+
+        @Override
+        public byte[] row() {
+            return record.row();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package lehoai.csvtitan.service.sort;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Least significant digit radix sort of rows by key, one byte per pass.
+ * It applies when every sort column has a fixed-width key ({@code INT}, {@code DOUBLE}, {@code DATE},
+ * {@code BOOLEAN}, see {@link SortKeyEncoder#fixedWidth()}): a key is then never a proper prefix of another,
+ * so comparing keys padded with zeros to the same width gives the order of {@link SortKeyEncoder#compare}.
+ * Passes where every key has the same byte, such as the high bytes of small numbers, are skipped.
+ * Every pass is stable, so equal keys keep their order. Large arrays are sorted on the common pool:
+ * every thread counts and scatters its own block, at offsets that keep the blocks in order.
+ */
+final class RadixSort {
+
+    /**
+     * Below this number of rows, a comparison sort is faster.
+     */
+    static final int MIN_ROWS = 256;
+
+    private static final int PARALLEL_MIN_ROWS = 1 << 16;
+
+    private RadixSort() {
+    }
+
+    /**
+     * Sorts rows by key.
+     *
+     * @param records     the rows to sort
+     * @param width       width of the keys, see {@link SortKeyEncoder#fixedWidth()}
+     * @param parallelism number of threads to use for large arrays
+     */
+    static void sort(RunRecord[] records, int width, int parallelism) {
+        int n = records.length;
+        if (n < MIN_ROWS) {
+            Arrays.sort(records, RunRecord.KEY_ORDER);
+            return;
+        }
+        int threads = n < PARALLEL_MIN_ROWS ? 1 : Math.max(1, Math.min(parallelism, n / PARALLEL_MIN_ROWS));
+        int blockSize = (n + threads - 1) / threads;
+        int[][] counts = new int[threads][256];
+        RunRecord[] from = records;
+        RunRecord[] to = new RunRecord[n];
+
+        for (int b = width - 1; b >= 0; b--) {
+            int digit = b;
+            RunRecord[] source = from;
+            RunRecord[] target = to;
+            forEachBlock(threads, t -> {
+                int[] count = counts[t];
+                Arrays.fill(count, 0);
+                for (int i = t * blockSize, end = Math.min(n, i + blockSize); i < end; i++) {
+                    count[digit(source[i].key(), digit)]++;
+                }
+            });
+            if (isConstant(counts, n)) {
+                continue;
+            }
+
+            // Turn the counts into the first position of every (digit, block), block after block.
+            int position = 0;
+            for (int d = 0; d < 256; d++) {
+                for (int t = 0; t < threads; t++) {
+                    int count = counts[t][d];
+                    counts[t][d] = position;
+                    position += count;
+                }
+            }
+            forEachBlock(threads, t -> {
+                int[] next = counts[t];
+                for (int i = t * blockSize, end = Math.min(n, i + blockSize); i < end; i++) {
+                    target[next[digit(source[i].key(), digit)]++] = source[i];
+                }
+            });
+            from = target;
+            to = source;
+        }
+        if (from != records) {
+            System.arraycopy(from, 0, records, 0, n);
+        }
+    }
+
+    private static void forEachBlock(int threads, IntConsumer block) {
+        if (threads == 1) {
+            block.accept(0);
+        } else {
+            IntStream.range(0, threads).parallel().forEach(block);
+        }
+    }
+
+    /**
+     * @return true if one digit holds every row, so the pass would not move anything
+     */
+    private static boolean isConstant(int[][] counts, int n) {
+        for (int d = 0; d < 256; d++) {
+            int total = 0;
+            for (int[] count : counts) {
+                total += count[d];
+            }
+            if (total != 0) {
+                return total == n;
+            }
+        }
+        return true;
+    }
+
+    private static int digit(byte[] key, int b) {
+        return b < key.length ? key[b] & 0xFF : 0;
+    }
+}
@@ -0,0 +1,98 @@
+package lehoai.csvtitan.service.sort;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits the key space into ranges of about the same number of rows, from a sample of the keys.
+ * Every key of partition {@code i} sorts before every key of partition {@code i + 1}, and equal keys always
+ * fall into the same partition, so sorting the partitions independently and concatenating them sorts the file.
+ */
+class RangePartitioner {
+
+    /**
+     * Number of sampled keys per partition.
+     */
+    static final int SAMPLES_PER_PARTITION = 256;
+
+    private final byte[][] splitters;
+
+    /**
+     * Builds the partitioner from sampled keys.
+     *
+     * @param sample     sampled keys, reordered by this method
+     * @param size       number of keys in the sample
+     * @param partitions wanted number of partitions
+     */
+    RangePartitioner(byte[][] sample, int size, int partitions) {
+        Arrays.sort(sample, 0, size, SortKeyEncoder::compare);
+        int count = size == 0 ? 0 : Math.max(0, partitions - 1);
+        splitters = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            splitters[i] = sample[(int) ((long) (i + 1) * size / partitions)];
+        }
+    }
+
+    /**
+     * @return the number of partitions
+     */
+    int partitions() {
+        return splitters.length + 1;
+    }
+
+    /**
+     * Finds the partition of a key: the number of splitters that are not above it.
+     *
+     * @param key a sort key
+     * @return the partition, from 0 to {@link #partitions()} - 1
+     */
+    int partitionOf(byte[] key) {
+        int low = 0;
+        int high = splitters.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (SortKeyEncoder.compare(splitters[mid], key) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Uniform sample of a stream of keys (reservoir sampling), with a fixed seed so that sorts are repeatable.
+     */
+    static class Sampler {
+        private final byte[][] sample;
+        private final Random random = new Random(0x5EED);
+        private long seen;
+
+        /**
+         * @param capacity number of keys to keep
+         */
+        Sampler(int capacity) {
+            this.sample = new byte[capacity][];
+        }
+
+        void accept(byte[] key) {
+            if (seen < sample.length) {
+                sample[(int) seen] = key;
+            } else {
+                long slot = (long) (random.nextDouble() * (seen + 1));
+                if (slot < sample.length) {
+                    sample[(int) slot] = key;
+                }
+            }
+            seen++;
+        }
+
+        byte[][] sample() {
+            return sample;
+        }
+
+        int size() {
+            return (int) Math.min(seen, sample.length);
+        }
+    }
+}
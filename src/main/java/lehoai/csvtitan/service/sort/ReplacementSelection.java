@@ -0,0 +1,101 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+
+/**
+ * Generates sorted runs by replacement selection.
+ * The heap holds as many rows as the memory budget allows. The smallest row of the current run is written,
+ * and the row read to replace it joins the current run if its key is not below the last key written,
+ * or the next run otherwise. Equal keys keep their input order, within a run and across runs.
+ */
+class ReplacementSelection {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::run)
+            .thenComparing(Entry::record, RunRecord.KEY_ORDER)
+            .thenComparingLong(Entry::seq);
+
+    private final SortOptions options;
+
+    /**
+     * A buffered row, tagged with the run it belongs to and its position in the input.
+     */
+    private record Entry(int run, RunRecord record, long seq) {
+    }
+
+    /**
+     * Constructs a run generator.
+     *
+     * @param options memory budget, row limit per run and compression of the runs
+     */
+    ReplacementSelection(SortOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Reads the whole input and writes it as sorted runs.
+     *
+     * @param reader   reads the key and the bytes of the next row, {@code null} at the end of the input
+     * @param runFiles receives the paths to the runs, in order, even when generation fails
+     * @throws IOException if a run can't be written
+     */
+    void generateRuns(Supplier<RunRecord> reader, List<Path> runFiles) throws IOException {
+        long budget = options.budget();
+        int maxRows = options.maxRunRows > 0 ? options.maxRunRows : Integer.MAX_VALUE;
+        PriorityQueue<Entry> heap = new PriorityQueue<>(ORDER);
+        long retained = 0;
+        long seq = 0;
+        boolean isEof = false;
+
+        while (!isEof && retained < budget && heap.size() < maxRows) {
+            RunRecord record = reader.get();
+            if (record == null) {
+                isEof = true;
+            } else {
+                heap.add(new Entry(0, record, seq++));
+                retained += record.retainedSize();
+            }
+        }
+
+        RunWriter writer = null;
+        int currentRun = -1;
+        byte[] lastKey = null;
+        try {
+            while (!heap.isEmpty()) {
+                Entry smallest = heap.poll();
+                retained -= smallest.record().retainedSize();
+                if (smallest.run() != currentRun) {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                    Path runFile = Files.createTempFile("chunk_", ".run");
+                    runFiles.add(runFile);
+                    writer = new RunWriter(runFile, RunWriter.BUFFER_SIZE, options.compressRuns);
+                    currentRun = smallest.run();
+                }
+                writer.write(smallest.record());
+                lastKey = smallest.record().key();
+
+                while (!isEof && retained < budget && heap.size() < maxRows) {
+                    RunRecord record = reader.get();
+                    if (record == null) {
+                        isEof = true;
+                        break;
+                    }
+                    boolean fitsCurrentRun = SortKeyEncoder.compare(record.key(), lastKey) >= 0;
+                    heap.add(new Entry(fitsCurrentRun ? currentRun : currentRun + 1, record, seq++));
+                    retained += record.retainedSize();
+                }
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/**
+ * Run buffer packing rows contiguously in off-heap memory, so a buffered row costs no heap object.
+ * Every row is stored as the length of its key, the length of its row, the key and the row bytes.
+ * The rows are sorted through two primitive arrays: the first 8 bytes of every key, compared unsigned,
+ * and the offset of the row in the arena. Whole keys are only compared when the prefixes are equal,
+ * and equal keys are ordered by offset, which is the order the rows were added in.
+ * The memory is allocated as rows are added, doubling from {@link #INITIAL_SIZE} up to the capacity, so a small
+ * file or the last run of a large one doesn't reserve the whole budget.
+ * The memory is freed by {@link #close()}, as soon as the run is spilled. The arena is shared, so it can be
+ * filled by one thread and sorted and closed by another.
+ */
+class RowArena implements RunBuffer {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    private static final int HEADER = 8;
+
+    /**
+     * Bytes allocated for the first rows.
+     */
+    static final long INITIAL_SIZE = 64 * 1024;
+
+    private final long capacity;
+    private final int maxRows;
+    private Arena arena;
+    private MemorySegment segment;
+    private long used;
+    private long[] prefixes = new long[1024];
+    private long[] offsets = new long[1024];
+    private int size;
+
+    /**
+     * Allocates the first block of the arena.
+     *
+     * @param capacity maximum bytes of off-heap memory for the rows and their keys
+     * @param maxRows  maximum number of rows
+     */
+    RowArena(long capacity, int maxRows) {
+        this.capacity = Math.max(HEADER, capacity);
+        this.maxRows = maxRows;
+        this.arena = Arena.ofShared();
+        this.segment = arena.allocate(Math.min(this.capacity, INITIAL_SIZE));
+    }
+
+    @Override
+    public boolean add(RunRecord record) {
+        long length = HEADER + record.key().length + record.row().length;
+        if (size > 0 && (used + length > capacity || size >= maxRows)) {
+            return false;
+        }
+        if (used + length > segment.byteSize()) {
+            // A first row larger than the capacity still gets an arena of its own size.
+            grow(Math.max(used + length, Math.min(capacity, segment.byteSize() * 2)));
+        }
+        if (size == offsets.length) {
+            prefixes = Arrays.copyOf(prefixes, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        byte[] key = record.key();
+        segment.set(INT, used, key.length);
+        segment.set(INT, used + 4, record.row().length);
+        MemorySegment.copy(key, 0, segment, ValueLayout.JAVA_BYTE, used + HEADER, key.length);
+        MemorySegment.copy(record.row(), 0, segment, ValueLayout.JAVA_BYTE, used + HEADER + key.length, record.row().length);
+        prefixes[size] = prefix(key);
+        offsets[size] = used;
+        size++;
+        used += length;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isOrdered() {
+        for (int i = 1; i < size; i++) {
+            if (compareKeys(i - 1, i) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] firstKey() {
+        return key(offsets[0]);
+    }
+
+    @Override
+    public byte[] lastKey() {
+        return key(offsets[size - 1]);
+    }
+
+    /**
+     * Sorts the rows with a bottom-up merge sort on the prefix and offset arrays.
+     */
+    @Override
+    public void sort() {
+        long[] fromPrefixes = prefixes;
+        long[] fromOffsets = offsets;
+        long[] toPrefixes = new long[size];
+        long[] toOffsets = new long[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int mid = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int i = low;
+                int j = mid;
+                for (int k = low; k < high; k++) {
+                    if (i < mid && (j >= high || compare(fromPrefixes[i], fromOffsets[i], fromPrefixes[j], fromOffsets[j]) <= 0)) {
+                        toPrefixes[k] = fromPrefixes[i];
+                        toOffsets[k] = fromOffsets[i++];
+                    } else {
+                        toPrefixes[k] = fromPrefixes[j];
+                        toOffsets[k] = fromOffsets[j++];
+                    }
+                }
+            }
+            long[] swap = fromPrefixes;
+            fromPrefixes = toPrefixes;
+            toPrefixes = swap;
+            swap = fromOffsets;
+            fromOffsets = toOffsets;
+            toOffsets = swap;
+        }
+        prefixes = fromPrefixes;
+        offsets = fromOffsets;
+    }
+
+    @Override
+    public void writeTo(MergePlanner.RecordSink sink) throws IOException {
+        for (int i = 0; i < size; i++) {
+            long offset = offsets[i];
+            int keyLength = segment.get(INT, offset);
+            int rowLength = segment.get(INT, offset + 4);
+            byte[] key = segment.asSlice(offset + HEADER, keyLength).toArray(ValueLayout.JAVA_BYTE);
+            byte[] row = segment.asSlice(offset + HEADER + keyLength, rowLength).toArray(ValueLayout.JAVA_BYTE);
+            sink.write(new RunRecord(key, row));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (arena.scope().isAlive()) {
+            arena.close();
+        }
+        prefixes = offsets = new long[0];
+        size = 0;
+    }
+
+    /**
+     * Moves the rows to a larger segment and frees the previous one.
+     */
+    private void grow(long newSize) {
+        Arena grown = Arena.ofShared();
+        MemorySegment larger = grown.allocate(newSize);
+        larger.copyFrom(segment.asSlice(0, used));
+        arena.close();
+        arena = grown;
+        segment = larger;
+    }
+
+    private int compareKeys(int a, int b) {
+        return compare(prefixes[a], offsets[a], prefixes[b], offsets[b]);
+    }
+
+    private int compare(long prefixA, long offsetA, long prefixB, long offsetB) {
+        int cmp = Long.compareUnsigned(prefixA, prefixB);
+        if (cmp != 0) {
+            return cmp;
+        }
+        MemorySegment keyA = segment.asSlice(offsetA + HEADER, segment.get(INT, offsetA));
+        MemorySegment keyB = segment.asSlice(offsetB + HEADER, segment.get(INT, offsetB));
+        long mismatch = keyA.mismatch(keyB);
+        if (mismatch < 0) {
+            return Long.compare(offsetA, offsetB);
+        }
+        if (mismatch == keyA.byteSize()) {
+            return -1;
+        }
+        if (mismatch == keyB.byteSize()) {
+            return 1;
+        }
+        return Byte.compareUnsigned(keyA.get(ValueLayout.JAVA_BYTE, mismatch), keyB.get(ValueLayout.JAVA_BYTE, mismatch));
+    }
+
+    private byte[] key(long offset) {
+        return segment.asSlice(offset + HEADER, segment.get(INT, offset)).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    /**
+     * @return the first 8 bytes of the key as a big-endian number, padded with zeros
+     */
+    private static long prefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix;
+    }
+}
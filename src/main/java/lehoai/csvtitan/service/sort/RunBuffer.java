@@ -0,0 +1,57 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.IOException;
+
+/**
+ * Rows buffered in memory until they are sorted and spilled as a run.
+ * A buffer accepts rows until its budget is reached; an empty buffer accepts any row, however large.
+ */
+interface RunBuffer extends AutoCloseable {
+
+    /**
+     * Adds a row, unless the buffer is full.
+     *
+     * @param record the row and its key
+     * @return false if the buffer is full, the row was not added
+     */
+    boolean add(RunRecord record);
+
+    /**
+     * @return the number of rows
+     */
+    int size();
+
+    /**
+     * @return true if the keys never decrease, in the order the rows were added or sorted
+     */
+    boolean isOrdered();
+
+    /**
+     * @return the key of the first row
+     */
+    byte[] firstKey();
+
+    /**
+     * @return the key of the last row
+     */
+    byte[] lastKey();
+
+    /**
+     * Sorts the rows by key; equal keys keep the order they were added in.
+     */
+    void sort();
+
+    /**
+     * Writes the rows in their current order.
+     *
+     * @param sink receives the rows
+     * @throws IOException if the sink fails
+     */
+    void writeTo(MergePlanner.RecordSink sink) throws IOException;
+
+    /**
+     * Releases the memory of the buffer.
+     */
+    @Override
+    void close();
+}
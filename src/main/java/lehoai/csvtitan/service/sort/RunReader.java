@@ -0,0 +1,87 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads back, through a buffer, a run written by {@link RunWriter}, inflating it if it was compressed.
+ */
+class RunReader implements AutoCloseable {
+
+    private final InputStream in;
+    private final Inflater inflater;
+
+    /**
+     * Opens a run file for reading.
+     *
+     * @param file       the run file
+     * @param bufferSize size of the read buffer
+     * @param compressed whether the run was deflated
+     * @throws IOException if the file can't be opened
+     */
+    RunReader(Path file, int bufferSize, boolean compressed) throws IOException {
+        InputStream fileIn = Files.newInputStream(file);
+        if (compressed) {
+            this.inflater = new Inflater();
+            fileIn = new InflaterInputStream(fileIn, inflater, bufferSize);
+        } else {
+            this.inflater = null;
+        }
+        this.in = new BufferedInputStream(fileIn, bufferSize);
+    }
+
+    /**
+     * Reads the next record of the run.
+     *
+     * @return the record, or {@code null} at the end of the run
+     * @throws IOException if an I/O error occurs or the run is truncated
+     */
+    RunRecord next() throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            return null;
+        }
+        byte[] key = readBytes(readVarInt(first));
+        byte[] row = readBytes(readVarInt(in.read()));
+        return new RunRecord(key, row);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private byte[] readBytes(int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) {
+            throw new EOFException("Truncated run");
+        }
+        return bytes;
+    }
+
+    private int readVarInt(int b) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (b < 0) {
+                throw new EOFException("Truncated run");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            b = in.read();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package lehoai.csvtitan.service.sort;
+
+import java.util.Comparator;
+
+/**
+ * A row of a sort run: its sort key and the bytes of the row, ready to be written to the output.
+ *
+ * @param key the normalized key, see {@link SortKeyEncoder}
+ * @param row the encoded row, without line terminator
+ */
+record RunRecord(byte[] key, byte[] row) {
+
+    /**
+     * Orders records by key.
+     */
+    static final Comparator<RunRecord> KEY_ORDER = (a, b) -> SortKeyEncoder.compare(a.key, b.key);
+
+    /**
+     * Estimates the heap retained by the record and its reference in a list:
+     * object headers, references and byte arrays padded to 8 bytes.
+     *
+     * @return the estimated size in bytes
+     */
+    long retainedSize() {
+        return 8 + 24 + align(16 + key.length) + align(16 + row.length);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,17 @@
+package lehoai.csvtitan.service.sort;
+
+/**
+ * How {@link MergeSort} cuts the input into sorted runs.
+ */
+public enum RunStrategy {
+    /**
+     * Fill buffers up to the run budget and sort them on several threads; runs are as large as a buffer.
+     */
+    CHUNK,
+    /**
+     * Replacement selection through a heap using the whole budget, on one thread.
+     * Runs are about twice the memory on random input and much longer on nearly sorted input,
+     * which leaves fewer runs to merge.
+     */
+    REPLACEMENT_SELECTION
+}
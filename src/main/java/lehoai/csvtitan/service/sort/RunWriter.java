@@ -0,0 +1,78 @@
+package lehoai.csvtitan.service.sort;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a sorted run to a temporary file in a compact binary format.
+ * Every record is the length of its key as a varint, the key, the length of its row as a varint and the row bytes,
+ * so the merge reads keys back without parsing CSV and copies rows to the output as they are.
+ * The run can be compressed with {@link Deflater#BEST_SPEED}: records are deflated as the buffer fills up,
+ * so the file is still written and read sequentially.
+ */
+class RunWriter implements AutoCloseable {
+
+    /**
+     * Default buffer size of run readers and writers.
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final Deflater deflater;
+
+    /**
+     * Opens a run file for writing.
+     *
+     * @param file       the run file
+     * @param bufferSize size of the write buffer
+     * @param compress   whether to deflate the run
+     * @throws IOException if the file can't be opened
+     */
+    RunWriter(Path file, int bufferSize, boolean compress) throws IOException {
+        OutputStream fileOut = Files.newOutputStream(file);
+        if (compress) {
+            this.deflater = new Deflater(Deflater.BEST_SPEED);
+            fileOut = new DeflaterOutputStream(fileOut, deflater, bufferSize);
+        } else {
+            this.deflater = null;
+        }
+        this.out = new BufferedOutputStream(fileOut, bufferSize);
+    }
+
+    /**
+     * Appends a record to the run.
+     *
+     * @param record the record
+     * @throws IOException if an I/O error occurs
+     */
+    void write(RunRecord record) throws IOException {
+        writeVarInt(record.key().length);
+        out.write(record.key());
+        writeVarInt(record.row().length);
+        out.write(record.row());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
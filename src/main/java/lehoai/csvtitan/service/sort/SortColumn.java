@@ -0,0 +1,77 @@
+package lehoai.csvtitan.service.sort;
+
+import lehoai.csvtitan.service.core.Type;
+
+import java.util.Locale;
+
+/**
+ * Describes how a column takes part in a sort.
+ * The type decides how values are compared: numbers and dates by value, strings by code point
+ * or by the collation rules of a locale.
+ * Empty values are nulls, and so are values that can't be parsed as the type unless {@link #unparsedAsString} is set.
+ */
+public class SortColumn {
+
+    /**
+     * Index of the column in the CSV file.
+     */
+    public int index;
+
+    /**
+     * How the values of the column are compared, {@code null} to detect it from a sample of the first rows.
+     * A detected type also sets {@link #unparsedAsString}.
+     */
+    public Type type;
+
+    /**
+     * True to sort the values that can't be parsed as the type by code point, after the parsed values,
+     * false to treat them as nulls. Default is false.
+     */
+    public boolean unparsedAsString;
+
+    /**
+     * Pattern of the {@code DATE} values, see {@link java.time.format.DateTimeFormatter}, {@code null} to detect it
+     * from a sample of the first rows among {@link lehoai.csvtitan.service.core.SchemaDetector#COMMON_DATE_FORMATS}.
+     * Default is {@code null}.
+     */
+    public String dateFormat;
+
+    /**
+     * True for ascending order, false for descending order. Default is true.
+     */
+    public boolean asc;
+
+    /**
+     * True to put nulls before every value, false to put them after. Default is false.
+     * Nulls stay at the same end whatever the direction.
+     */
+    public boolean nullsFirst;
+
+    /**
+     * Locale whose {@link java.text.Collator} orders the {@code STRING} values, {@code null} to order them
+     * by code point. Default is {@code null}.
+     */
+    public Locale locale;
+
+    /**
+     * Constructs an ascending sort on a column, using its detected type.
+     *
+     * @param index index of the column
+     */
+    public SortColumn(int index) {
+        this(index, null, true);
+    }
+
+    /**
+     * Constructs a sort on a column, with nulls last.
+     *
+     * @param index index of the column
+     * @param type  how the values are compared
+     * @param asc   true for ascending order, false for descending order
+     */
+    public SortColumn(int index, Type type, boolean asc) {
+        this.index = index;
+        this.type = type;
+        this.asc = asc;
+    }
+}
@@ -0,0 +1,304 @@
+package lehoai.csvtitan.service.sort;
+
+import lehoai.csvtitan.service.core.SchemaDetector;
+
+import java.nio.charset.StandardCharsets;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.TemporalAccessor;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.IntFunction;
+
+/**
+ * Turns the sort column values of a row into a normalized binary key, parsed once per row.
+ * Keys compare with {@link #compare(byte[], byte[])}, an unsigned byte-wise comparison,
+ * in the order described by the {@link SortSpec}. The key of a row is the concatenation of the keys of its
+ * sort columns; every column key is prefix-free, so comparing whole keys compares column by column.
+ * A column key is built as follows:
+ * <ul>
+ *     <li>a first byte places nulls before or after every value, and values sorted as strings with
+ *     {@link SortColumn#unparsedAsString} after the parsed ones,</li>
+ *     <li>{@code INT} and {@code DATE} (epoch milliseconds, parsed with the {@link SortColumn#dateFormat} of the column,
+ *     or the first of the common formats that matches) values are 8 big-endian bytes with the sign bit flipped,</li>
+ *     <li>{@code DOUBLE} values are 8 bytes of an order-preserving transform of their IEEE 754 bits,</li>
+ *     <li>{@code BOOLEAN} values are one byte, false before true,</li>
+ *     <li>{@code STRING} values are their UTF-8 bytes (code point order), terminated so that a prefix sorts first,</li>
+ *     <li>{@code STRING} values of a column with a {@link SortColumn#locale} are the bytes of their {@link CollationKey},
+ *     terminated the same way, so the collator runs once per row and never during the merge,</li>
+ *     <li>descending columns have their value bytes inverted.</li>
+ * </ul>
+ * Encoders are thread-safe.
+ */
+public class SortKeyEncoder {
+
+    private static final byte NULL_FIRST = 0x00;
+    private static final byte VALUE = 0x01;
+    private static final byte STRING = 0x02;
+    private static final byte NULL_LAST = 0x03;
+    private static final DateTimeFormatter[] DATE_FORMATTERS = Arrays.stream(SchemaDetector.COMMON_DATE_FORMATS)
+            .map(SortKeyEncoder::dateFormatter)
+            .toArray(DateTimeFormatter[]::new);
+
+    private final SortColumn[] columns;
+    private final DateTimeFormatter[][] dateFormatters;
+    // RuleBasedCollator.getCollationKey is synchronized, so every thread gets its own collators.
+    private final ThreadLocal<Collator[]> collators = ThreadLocal.withInitial(this::newCollators);
+
+    /**
+     * Constructs an encoder for a sort column.
+     *
+     * @param column the sort column
+     */
+    public SortKeyEncoder(SortColumn column) {
+        this(new SortSpec(column));
+    }
+
+    /**
+     * Constructs an encoder for several sort columns.
+     *
+     * @param spec the sort columns, their types must be set
+     */
+    public SortKeyEncoder(SortSpec spec) {
+        this.columns = spec.columns.toArray(new SortColumn[0]);
+        this.dateFormatters = new DateTimeFormatter[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            dateFormatters[i] = columns[i].dateFormat == null
+                    ? DATE_FORMATTERS
+                    : new DateTimeFormatter[]{dateFormatter(columns[i].dateFormat)};
+        }
+    }
+
+    /**
+     * Finds the date format of a column: the first of the common formats that parses every value.
+     * The formats are always tried in the same order, so ambiguous values such as {@code 03/04/2024}
+     * are read the same way by every run.
+     *
+     * @param values non-empty values of the column
+     * @return a pattern of {@link SchemaDetector#COMMON_DATE_FORMATS}, or {@code null} if none parses every value
+     */
+    public static String detectDateFormat(Iterable<String> values) {
+        for (int f = 0; f < DATE_FORMATTERS.length; f++) {
+            boolean isMatch = true;
+            for (String value : values) {
+                if (parseDate(DATE_FORMATTERS[f], value.trim()) == null) {
+                    isMatch = false;
+                    break;
+                }
+            }
+            if (isMatch) {
+                return SchemaDetector.COMMON_DATE_FORMATS[f];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares two keys.
+     *
+     * @param a a key
+     * @param b another key
+     * @return a negative number, zero or a positive number as {@code a} sorts before, with or after {@code b}
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+
+    /**
+     * Gives the width of the keys when every sort column has a fixed-width value, so that keys can be
+     * radix sorted (see {@link RadixSort}). A null is a single byte, so a key may be shorter.
+     *
+     * @return the largest key width, or 0 if a column is a string
+     */
+    public int fixedWidth() {
+        int width = 0;
+        for (SortColumn column : columns) {
+            if (column.unparsedAsString) {
+                return 0;
+            }
+            switch (column.type) {
+                case INT, DOUBLE, DATE -> width += 9;
+                case BOOLEAN -> width += 2;
+                case STRING -> {
+                    return 0;
+                }
+            }
+        }
+        return width;
+    }
+
+    /**
+     * Encodes a value of the first sort column.
+     *
+     * @param value the raw value
+     * @return the key
+     */
+    public byte[] encode(String value) {
+        return encode(0, value);
+    }
+
+    /**
+     * Encodes the sort columns of a row.
+     *
+     * @param row gives the raw value of a column from its index, {@code null} if the row has no such column
+     * @return the key
+     */
+    public byte[] encode(IntFunction<String> row) {
+        if (columns.length == 1) {
+            return encode(0, row.apply(columns[0].index));
+        }
+        byte[][] parts = new byte[columns.length][];
+        int length = 0;
+        for (int i = 0; i < columns.length; i++) {
+            parts[i] = encode(i, row.apply(columns[i].index));
+            length += parts[i].length;
+        }
+        byte[] key = new byte[length];
+        int pos = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, key, pos, part.length);
+            pos += part.length;
+        }
+        return key;
+    }
+
+    private byte[] encode(int columnIndex, String value) {
+        SortColumn column = columns[columnIndex];
+        byte[] key = value == null || value.isEmpty() ? null : encodeValue(columnIndex, value);
+        byte marker = VALUE;
+        if (key == null && column.unparsedAsString && value != null && !value.isEmpty()) {
+            key = encodeBytes(value.getBytes(StandardCharsets.UTF_8));
+            marker = STRING;
+        }
+        if (key == null) {
+            return new byte[]{column.nullsFirst ? NULL_FIRST : NULL_LAST};
+        }
+        key[0] = marker;
+        if (!column.asc) {
+            for (int i = 1; i < key.length; i++) {
+                key[i] = (byte) ~key[i];
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Encodes a value, leaving the first byte for the null marker.
+     *
+     * @return the key, or {@code null} if the value can't be parsed as the column type
+     */
+    private byte[] encodeValue(int columnIndex, String value) {
+        SortColumn column = columns[columnIndex];
+        try {
+            return switch (column.type) {
+                case INT -> encodeLong(Long.parseLong(value.trim()));
+                case DOUBLE -> encodeDouble(Double.parseDouble(value.trim()));
+                case DATE -> {
+                    Long epoch = parseDate(dateFormatters[columnIndex], value.trim());
+                    yield epoch == null ? null : encodeLong(epoch);
+                }
+                case BOOLEAN -> {
+                    if (value.equalsIgnoreCase("true")) {
+                        yield new byte[]{0, 1};
+                    }
+                    yield value.equalsIgnoreCase("false") ? new byte[]{0, 0} : null;
+                }
+                case STRING -> column.locale == null
+                        ? encodeBytes(value.getBytes(StandardCharsets.UTF_8))
+                        : encodeBytes(collators.get()[columnIndex].getCollationKey(value).toByteArray());
+            };
+        } catch (NumberFormatException _) {
+            return null;
+        }
+    }
+
+    private static byte[] encodeLong(long value) {
+        byte[] key = new byte[9];
+        long bits = value ^ Long.MIN_VALUE;
+        for (int i = 8; i >= 1; i--) {
+            key[i] = (byte) bits;
+            bits >>>= 8;
+        }
+        return key;
+    }
+
+    private static byte[] encodeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // Negative numbers have all their bits flipped, positive ones only the sign bit.
+        bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        return encodeLong(bits ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * Encodes the bytes of a string (UTF-8 or collation key) followed by a {@code 00 00} terminator.
+     * A {@code 00} byte in the value is escaped as {@code 00 FF}, so that a shorter string sorts
+     * before the strings it prefixes, also once the bytes are inverted for a descending order.
+     */
+    private static byte[] encodeBytes(byte[] bytes) {
+        int zeros = 0;
+        for (byte b : bytes) {
+            if (b == 0) {
+                zeros++;
+            }
+        }
+        byte[] key = new byte[1 + bytes.length + zeros + 2];
+        int pos = 1;
+        for (byte b : bytes) {
+            key[pos++] = b;
+            if (b == 0) {
+                key[pos++] = (byte) 0xFF;
+            }
+        }
+        return key; // The last two bytes are already 00 00.
+    }
+
+    private Collator[] newCollators() {
+        Collator[] result = new Collator[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].locale != null) {
+                result[i] = Collator.getInstance(columns[i].locale);
+            }
+        }
+        return result;
+    }
+
+    private static DateTimeFormatter dateFormatter(String pattern) {
+        return new DateTimeFormatterBuilder().parseCaseInsensitive().appendPattern(pattern).toFormatter(Locale.ENGLISH);
+    }
+
+    /**
+     * Parses a date with the first of the given formats that matches.
+     *
+     * @return epoch milliseconds (UTC for dates without zone), or {@code null} if no format matches
+     */
+    private static Long parseDate(DateTimeFormatter[] formatters, String value) {
+        for (DateTimeFormatter formatter : formatters) {
+            Long epoch = parseDate(formatter, value);
+            if (epoch != null) {
+                return epoch;
+            }
+        }
+        return null;
+    }
+
+    private static Long parseDate(DateTimeFormatter formatter, String value) {
+        try {
+            TemporalAccessor parsed = formatter.parseBest(value, ZonedDateTime::from, LocalDateTime::from, LocalDate::from);
+            return switch (parsed) {
+                case ZonedDateTime zdt -> zdt.toInstant().toEpochMilli();
+                case LocalDateTime ldt -> ldt.toInstant(ZoneOffset.UTC).toEpochMilli();
+                case LocalDate ld -> ld.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+                default -> null;
+            };
+        } catch (DateTimeException _) {
+            return null;
+        }
+    }
+}
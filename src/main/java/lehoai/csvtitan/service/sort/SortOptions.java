@@ -0,0 +1,122 @@
+package lehoai.csvtitan.service.sort;
+
+/**
+ * Resources given to {@link MergeSort}.
+ * Rows are buffered until the estimated retained size of a run reaches its share of the memory budget,
+ * so wide and narrow files both get runs as large as the budget allows.
+ * The budget is shared by the runs being sorted by the workers and the one being filled by the reader.
+ */
+public class SortOptions {
+
+    /**
+     * Smallest run worth sorting on its own thread. A budget too small for one run of this size
+     * per thread sorts with fewer threads.
+     */
+    public static final long MIN_RUN_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * Memory available for buffered rows, in bytes. Default is 0, which means a fraction of the maximum heap.
+     */
+    public long memoryBudget;
+
+    /**
+     * Fraction of the maximum heap used as budget when {@link #memoryBudget} is 0. Default is 0.25.
+     */
+    public double heapFraction;
+
+    /**
+     * Number of worker threads sorting and spilling runs. Default is the number of processors, at most 4.
+     */
+    public int parallelism;
+
+    /**
+     * Maximum number of rows in a run, 0 for no limit. Default is 0.
+     */
+    public int maxRunRows;
+
+    /**
+     * Maximum number of runs read by one merge. More runs are first merged in groups into intermediate runs.
+     * Default is 64.
+     */
+    public int maxFanIn;
+
+    /**
+     * True to deflate the runs spilled to disk, trading some CPU for less I/O. Default is false.
+     */
+    public boolean compressRuns;
+
+    /**
+     * How runs are generated when the file doesn't fit in memory. Default is {@link RunStrategy#CHUNK}.
+     */
+    public RunStrategy runStrategy;
+
+    /**
+     * True to sort keys with the position of their row instead of whole rows, then copy the rows from the
+     * memory-mapped input in key order. Buffers and runs hold 12 bytes per row besides the key, which suits
+     * wide files sorted on a few columns; the output is written with random reads. Ignored when the file can't
+     * be mapped (see {@link lehoai.csvtitan.service.parse.MappedCsv#supports}). Default is false.
+     */
+    public boolean tagSort;
+
+    /**
+     * Number of key ranges sorted independently and in parallel, 0 or 1 to sort the file as a whole.
+     * Splitters are picked from a sample of the keys, which costs an extra pass over the file.
+     * Ignored with a {@link #limit} or when the file can't be mapped. Default is 0.
+     */
+    public int partitions;
+
+    /**
+     * With {@link #partitions}, true to write every range to its own numbered file with a header,
+     * see {@link MergeSort#partFile(String, int)}, instead of one output file. Default is false.
+     */
+    public boolean partFiles;
+
+    /**
+     * True to buffer runs in off-heap memory arenas instead of row objects on the heap.
+     * The budget is then counted in bytes of keys and rows, so more rows fit in it and the collector has
+     * almost nothing to trace; the arena of a run is freed as soon as it is spilled.
+     * Only used by {@link RunStrategy#CHUNK}. Default is false.
+     */
+    public boolean offHeap;
+
+    /**
+     * Number of rows to output, 0 to output every row. Default is 0.
+     * With a limit, the file is read once and only the first rows are kept in memory; nothing is spilled.
+     */
+    public long limit;
+
+    /**
+     * Constructs the default options.
+     */
+    public SortOptions() {
+        this.heapFraction = 0.25;
+        this.maxFanIn = 64;
+        this.runStrategy = RunStrategy.CHUNK;
+        this.parallelism = Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return the memory budget in bytes
+     */
+    public long budget() {
+        return memoryBudget > 0 ? memoryBudget : (long) (Runtime.getRuntime().maxMemory() * heapFraction);
+    }
+
+    /**
+     * Number of worker threads, reduced so that every run in memory gets at least {@link #MIN_RUN_BYTES}.
+     *
+     * @return the effective parallelism
+     */
+    public int effectiveParallelism() {
+        return (int) Math.max(1, Math.min(Math.max(1, parallelism), budget() / MIN_RUN_BYTES - 1));
+    }
+
+    /**
+     * Size a run may reach before it is cut: one share of the budget for each worker, plus one for the reader.
+     *
+     * @return the estimated size in bytes
+     */
+    public long runBudget() {
+        return Math.max(1, budget() / (effectiveParallelism() + 1));
+    }
+}
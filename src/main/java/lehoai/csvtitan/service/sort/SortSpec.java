@@ -0,0 +1,36 @@
+package lehoai.csvtitan.service.sort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The columns a sort is made on, by order of priority: rows are ordered by the first column,
+ * rows with equal values by the second one, and so on.
+ * Every column has its own type, direction and null ordering.
+ */
+public class SortSpec {
+
+    /**
+     * Sort columns, most significant first.
+     */
+    public List<SortColumn> columns;
+
+    /**
+     * Constructs a spec.
+     *
+     * @param columns sort columns, most significant first
+     */
+    public SortSpec(SortColumn... columns) {
+        this.columns = new ArrayList<>(Arrays.asList(columns));
+    }
+
+    /**
+     * Constructs a spec.
+     *
+     * @param columns sort columns, most significant first
+     */
+    public SortSpec(List<SortColumn> columns) {
+        this.columns = new ArrayList<>(columns);
+    }
+}
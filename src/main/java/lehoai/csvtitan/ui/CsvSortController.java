@@ -6,16 +6,24 @@ import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import lehoai.csvtitan.service.core.CsvConfig;
 import lehoai.csvtitan.service.core.Schema;
+import lehoai.csvtitan.service.core.Type;
 import lehoai.csvtitan.service.sort.MergeSort;
+import lehoai.csvtitan.service.sort.SortColumn;
+import lehoai.csvtitan.service.sort.SortOptions;
+import lehoai.csvtitan.service.sort.SortSpec;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -32,6 +40,19 @@ public class CsvSortController {
         void onSortSuccess(String output);
     }
 
+    /**
+     * Locales offered to collate strings, after the code point order.
+     */
+    private static final Locale[] COLLATION_LOCALES = {
+            Locale.ENGLISH, Locale.FRENCH, Locale.GERMAN, Locale.ITALIAN, Locale.forLanguageTag("es"),
+            Locale.JAPANESE, Locale.CHINESE, Locale.KOREAN, Locale.forLanguageTag("vi")
+    };
+
+    /**
+     * Entry of the type dropdown for a type detected when sorting.
+     */
+    private static final String AUTO_TYPE = "Auto";
+
     private SortSuccessListener sortSuccessListener;
 
     @FXML
@@ -43,6 +64,27 @@ public class CsvSortController {
     @FXML
     private ComboBox<String> sortColumn;
 
+    @FXML
+    private ComboBox<String> columnType;
+
+    @FXML
+    private ComboBox<String> nullOrder;
+
+    @FXML
+    private ComboBox<String> collation;
+
+    @FXML
+    private ListView<SortColumn> sortKeys;
+
+    @FXML
+    private Button addKeyBtn;
+
+    @FXML
+    private Button removeKeyBtn;
+
+    @FXML
+    private TextField rowLimit;
+
     @FXML
     private TextField fileOutput;
 
@@ -54,6 +96,7 @@ public class CsvSortController {
 
     private String filePath;
     private CsvConfig config;
+    private List<Schema> schemaList;
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
 
     /**
@@ -65,6 +108,44 @@ public class CsvSortController {
         sortType.setItems(FXCollections.observableArrayList(Arrays.asList("ASC", "DESC")));
         sortType.getSelectionModel().select(0);
 
+        // Populate the type dropdown. "Auto" detects the type from a sample of the rows rather than the first one,
+        // and keeps the values that don't fit it; it is selected again whenever another column is picked.
+        List<String> types = new ArrayList<>(List.of(AUTO_TYPE));
+        Arrays.stream(Type.values()).map(Type::name).forEach(types::add);
+        columnType.setItems(FXCollections.observableArrayList(types));
+        columnType.getSelectionModel().select(0);
+        sortColumn.getSelectionModel().selectedIndexProperty().addListener((obs, oldIndex, newIndex) ->
+                columnType.getSelectionModel().select(0));
+
+        nullOrder.setItems(FXCollections.observableArrayList(Arrays.asList("Last", "First")));
+        nullOrder.getSelectionModel().select(0);
+
+        // Strings are compared by code point unless a locale is picked.
+        List<String> collations = new ArrayList<>(List.of("Code point"));
+        Arrays.stream(COLLATION_LOCALES).map(Locale::getDisplayName).forEach(collations::add);
+        collation.setItems(FXCollections.observableArrayList(collations));
+        collation.getSelectionModel().select(0);
+
+        // Sort keys, most significant first. Without keys, the column selected above is the only key.
+        sortKeys.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(SortColumn key, boolean empty) {
+                super.updateItem(key, empty);
+                setText(empty || key == null ? null : describe(key));
+            }
+        });
+        addKeyBtn.setOnAction(event -> {
+            if (sortColumn.getSelectionModel().getSelectedIndex() >= 0) {
+                sortKeys.getItems().add(selectedKey());
+            }
+        });
+        removeKeyBtn.setOnAction(event -> {
+            int index = sortKeys.getSelectionModel().getSelectedIndex();
+            if (index >= 0) {
+                sortKeys.getItems().remove(index);
+            }
+        });
+
         // Set up file chooser for output file selection.
         fileOutputBtn.setOnAction(event -> {
             FileChooser fileChooser = new FileChooser();
@@ -87,13 +168,35 @@ public class CsvSortController {
 
         // Set up the sort button to initiate the sorting process.
         sortButton.setOnAction(event -> {
+            // An empty row limit sorts every row, a limit only keeps the first rows.
+            SortOptions options = new SortOptions();
+            String limit = rowLimit.getText() == null ? "" : rowLimit.getText().trim();
+            if (!limit.isEmpty()) {
+                try {
+                    options.limit = Long.parseLong(limit);
+                } catch (NumberFormatException e) {
+                    options.limit = -1;
+                }
+                if (options.limit <= 0) {
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setHeaderText("Invalid row limit");
+                    alert.setContentText(limit + " is not a positive number");
+                    alert.showAndWait();
+                    return;
+                }
+            }
+
             sortButton.setDisable(true);
             sortButton.setText("Processing...");
 
             // Create and configure the background task for sorting.
+            SortSpec sortSpec = sortKeys.getItems().isEmpty()
+                    ? new SortSpec(selectedKey())
+                    : new SortSpec(sortKeys.getItems());
             BackgroundTask task = new BackgroundTask(
-                    sortColumn.getSelectionModel().getSelectedIndex(),
-                    sortType.getSelectionModel().getSelectedIndex(),
+                    sortSpec,
+                    options,
                     filePath,
                     fileOutput.getText(),
                     config
@@ -128,12 +231,39 @@ public class CsvSortController {
         });
     }
 
+    /**
+     * Builds a sort key from the column, direction, type, null ordering and collation currently selected.
+     *
+     * @return the sort key
+     */
+    private SortColumn selectedKey() {
+        int type = columnType.getSelectionModel().getSelectedIndex();
+        SortColumn column = new SortColumn(
+                sortColumn.getSelectionModel().getSelectedIndex(),
+                type > 0 ? Type.values()[type - 1] : null,
+                sortType.getSelectionModel().getSelectedIndex() == 0
+        );
+        column.nullsFirst = nullOrder.getSelectionModel().getSelectedIndex() == 1;
+        int locale = collation.getSelectionModel().getSelectedIndex();
+        column.locale = locale > 0 ? COLLATION_LOCALES[locale - 1] : null;
+        return column;
+    }
+
+    private String describe(SortColumn key) {
+        String name = schemaList != null && key.index < schemaList.size() ? schemaList.get(key.index).name : "#" + key.index;
+        return name + " " + (key.asc ? "ASC" : "DESC") + " (" + (key.type == null ? AUTO_TYPE : key.type)
+                + ", empty " + (key.nullsFirst ? "first" : "last")
+                + (key.locale != null && (key.type == null || key.type == Type.STRING) ? ", " + key.locale.getDisplayName() : "")
+                + ")";
+    }
+
     /**
      * Sets the schema list to populate the sort column dropdown.
      *
      * @param schemaList List of schemas representing columns in the CSV.
      */
     public void setSchemaList(List<Schema> schemaList) {
+        this.schemaList = schemaList;
         sortColumn.setItems(FXCollections.observableArrayList(schemaList.stream().map(s -> s.name).toList()));
         sortColumn.getSelectionModel().select(0);
     }
@@ -173,22 +303,22 @@ public class CsvSortController {
 
         private final String inputFile;
         private final String fileOutput;
-        private final int sortColIndex;
-        private final int sortType;
+        private final SortSpec sortSpec;
+        private final SortOptions options;
         private final CsvConfig config;
 
         /**
          * Constructs a BackgroundTask for sorting.
          *
-         * @param sortColIndex Index of the column to sort by.
-         * @param sortType     Sorting order (0 for ascending, 1 for descending).
-         * @param inputFile    Path to the input file.
-         * @param fileOutput   Path to the output file.
-         * @param config       Configuration for the CSV file.
+         * @param sortSpec   Columns to sort by, most significant first.
+         * @param options    Resources and row limit of the sort.
+         * @param inputFile  Path to the input file.
+         * @param fileOutput Path to the output file.
+         * @param config     Configuration for the CSV file.
          */
-        public BackgroundTask(int sortColIndex, int sortType, String inputFile, String fileOutput, CsvConfig config) {
-            this.sortColIndex = sortColIndex;
-            this.sortType = sortType;
+        public BackgroundTask(SortSpec sortSpec, SortOptions options, String inputFile, String fileOutput, CsvConfig config) {
+            this.sortSpec = sortSpec;
+            this.options = options;
             this.inputFile = inputFile;
             this.fileOutput = fileOutput;
             this.config = config;
@@ -197,7 +327,7 @@ public class CsvSortController {
         @Override
         protected Void call() throws Exception {
             MergeSort mergeSort = new MergeSort();
-            mergeSort.sort(inputFile, config, fileOutput, sortColIndex, sortType == 0);
+            mergeSort.sort(inputFile, config, fileOutput, sortSpec, options);
             return null;
         }
     }
@@ -2,6 +2,7 @@ package lehoai.csvtitan.ui;
 
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
@@ -11,13 +12,22 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import lehoai.csvtitan.CsvTitanApplication;
 import lehoai.csvtitan.service.CsvReader;
+import lehoai.csvtitan.service.MetaCache;
+import lehoai.csvtitan.service.PagedRowSource;
+import lehoai.csvtitan.service.core.ColumnStats;
 import lehoai.csvtitan.service.core.CsvConfig;
 import lehoai.csvtitan.service.core.Encoding;
 import lehoai.csvtitan.service.core.Schema;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import lehoai.csvtitan.service.parse.RowIndex;
 import org.apache.commons.csv.CSVRecord;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Controller for managing the CSV viewer tab in a tab panel.
@@ -46,17 +56,41 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
     @FXML
     public Button btnSort;
 
+    /**
+     * TextField to specify the row to jump to.
+     */
+    @FXML
+    public TextField goToRowField;
+
+    /**
+     * Button to show the rows starting at {@link #goToRowField}.
+     */
+    @FXML
+    public Button btnGoToRow;
+
+    /**
+     * Button to show the last rows of the file.
+     */
+    @FXML
+    public Button btnLastPage;
+
+    /**
+     * Label showing the number of rows once the file is indexed.
+     */
+    @FXML
+    public Label rowCountLabel;
+
     /**
      * TableView to display the data from the CSV file.
      */
     @FXML
-    private TableView<CSVRecord> tblData;
+    private TableView<List<String>> tblData;
 
     /**
      * TableView to display the schema (column metadata) of the CSV file.
      */
     @FXML
-    private TableView<Schema> tblSchema;
+    private TableView<SchemaRow> tblSchema;
 
     /**
      * Tab representing the view for this CSV file.
@@ -86,8 +120,32 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
      */
     private CsvReader csvReader;
 
+    /**
+     * Paged access to all the rows, available once the file is indexed.
+     */
+    private PagedRowSource pagedRowSource;
+
+    /**
+     * Set when the tab is closed, so that an index finishing afterwards releases its mapping.
+     */
+    private boolean closed;
+
     private MainController mainController;
 
+    /**
+     * Background thread executor for indexing the file.
+     */
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    /**
+     * A row of the schema table: a column with its statistics, {@code null} until the file is indexed.
+     *
+     * @param schema the name and type of the column
+     * @param stats  the statistics of the column
+     */
+    private record SchemaRow(Schema schema, ColumnStats stats) {
+    }
+
     /**
      * Initializes the controller and its associated components.
      * Sets default configurations, reads the CSV file, and displays its content.
@@ -98,19 +156,32 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
         encodingComboBox.getSelectionModel().select(0);
         try {
             this.csvReader = new CsvReader(filePath, this.getConfig());
+            this.csvReader.setMetaCache(MetaCache.getDefault());
             tabView.setText(this.csvReader.getFileName());
             this.csvReader.readMeta();
             this.loadData();
+            this.indexData();
         } catch (IOException _) {
             // Handle initialization errors gracefully (ignored for now)
         }
 
+        btnGoToRow.setOnAction(_ -> {
+            try {
+                int row = Math.max(0, Math.min(Integer.parseInt(goToRowField.getText().trim()), tblData.getItems().size() - 1));
+                tblData.scrollTo(row);
+                tblData.getSelectionModel().clearAndSelect(row);
+            } catch (NumberFormatException e) {
+                showError("Can't go to row " + goToRowField.getText() + "\n" + e.getMessage());
+            }
+        });
+        btnLastPage.setOnAction(_ -> tblData.scrollTo((int) pagedRowSource.lastPageStart(csvReader.getConfig().bufferedLines)));
+
         btnSort.setOnAction(_ -> {
             FXMLLoader loader = new FXMLLoader(CsvTitanApplication.class.getResource("screen/sort-view.fxml"));
             try {
                 Pane root = loader.load();
                 CsvSortController controller = loader.getController();
-                controller.setSchemaList(tblSchema.getItems());
+                controller.setSchemaList(Arrays.asList(csvReader.getSchemas()));
                 controller.setConfig(csvReader.getConfig());
                 controller.setFilePath(filePath);
                 controller.setSortSuccessListener(this);
@@ -124,27 +195,95 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
                 dialog.show();
 
             } catch (IOException e) {
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("An error occurred");
-                alert.setContentText("Can't open file\n" + e.getMessage());
-                alert.showAndWait();
+                showError("Can't open file\n" + e.getMessage());
             }
         });
 
-        tabView.setOnClosed(_ -> this.csvReader.close());
+        tabView.setOnClosed(_ -> {
+            closed = true;
+            if (mainController != null) {
+                mainController.onCsvTabClosed(this);
+            }
+            executorService.shutdownNow();
+            this.closePagedRows();
+            this.csvReader.close();
+        });
         btnReload.setOnMouseClicked(_ -> {
+            this.closePagedRows();
             this.csvReader.close();
             try {
                 this.csvReader = new CsvReader(filePath, this.getConfig());
+                this.csvReader.setMetaCache(MetaCache.getDefault());
                 this.csvReader.readMeta();
                 this.loadData();
+                this.indexData();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         });
     }
 
+    /**
+     * Builds the row index of the file in the background. Once it is ready, the preview is replaced by
+     * a virtualized view of all the rows, fetched page by page as the table scrolls.
+     * Files that can't be parsed at byte level (multi-byte delimiter, UTF-16) keep the preview.
+     */
+    private void indexData() {
+        btnGoToRow.setDisable(true);
+        btnLastPage.setDisable(true);
+        rowCountLabel.setText("");
+        if (!MappedCsv.supports(this.csvReader.getConfig())) {
+            return;
+        }
+        CsvReader reader = this.csvReader;
+        rowCountLabel.setText("Indexing...");
+        Task<PagedRowSource> task = new Task<>() {
+            @Override
+            protected PagedRowSource call() throws Exception {
+                RowIndex rowIndex = reader.buildIndex(Runtime.getRuntime().availableProcessors());
+                return new PagedRowSource(filePath, reader.getConfig(), rowIndex, PagedRowSource.DEFAULT_MAX_PAGES);
+            }
+        };
+        task.setOnSucceeded(_ -> {
+            if (closed || reader != this.csvReader) {
+                task.getValue().close();
+                return; // The tab was closed or the file was reloaded meanwhile
+            }
+            pagedRowSource = task.getValue();
+            rowCountLabel.setText(pagedRowSource.size() + " rows");
+            tblData.setItems(new PagedRowList(pagedRowSource));
+            this.initTableSchema();
+            btnGoToRow.setDisable(false);
+            btnLastPage.setDisable(false);
+        });
+        task.setOnFailed(_ -> rowCountLabel.setText(""));
+        executorService.submit(task);
+    }
+
+    /**
+     * Releases the paged rows of the previous file.
+     */
+    private void closePagedRows() {
+        if (pagedRowSource != null) {
+            tblData.setItems(FXCollections.observableArrayList());
+            pagedRowSource.close();
+            pagedRowSource = null;
+        }
+    }
+
+    /**
+     * Shows an error dialog.
+     *
+     * @param message the message to display
+     */
+    private void showError(String message) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText("An error occurred");
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
+
     /**
      * Sets the file path for the current CSV file.
      *
@@ -154,6 +293,20 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
         this.filePath = filePath;
     }
 
+    /**
+     * @return the file path of the current CSV file
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return the configuration the file is currently read with
+     */
+    public CsvConfig getCsvConfig() {
+        return csvReader != null ? csvReader.getConfig() : getConfig();
+    }
+
     /**
      * Loads the data and schema from the CSV file and initializes the tables.
      */
@@ -163,7 +316,7 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
     }
 
     /**
-     * Initializes the data table with content from the CSV file.
+     * Initializes the data table with a preview of the CSV file.
      * Configures columns dynamically based on the schema.
      */
     private void initTableData() {
@@ -173,12 +326,13 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
         int i = 0;
         for (Schema schema : schemas) {
             final int colIndex = i;
-            TableColumn<CSVRecord, String> column = new TableColumn<>(schema.name);
-            column.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().get(colIndex)));
+            TableColumn<List<String>, String> column = new TableColumn<>(schema.name);
+            column.setCellValueFactory(param -> new SimpleStringProperty(
+                    colIndex < param.getValue().size() ? param.getValue().get(colIndex) : ""));
             tblData.getColumns().add(column);
-            tblData.setItems(FXCollections.observableArrayList(rawData));
             i++;
         }
+        tblData.setItems(FXCollections.observableArrayList(rawData.stream().map(CSVRecord::toList).toList()));
         // TODO: Reset size to ensure CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN works
         for (TableColumn<?, ?> column : tblData.getColumns()) {
             column.setPrefWidth(100);
@@ -191,18 +345,38 @@ public class CsvTabController implements CsvSortController.SortSuccessListener {
 
     /**
      * Initializes the schema table with metadata from the CSV file.
-     * Displays column names and types.
+     * Displays column names and types, and the column statistics once the file is indexed.
      */
     private void initTableSchema() {
         tblSchema.getColumns().clear();
         Schema[] schemas = this.csvReader.getSchemas();
-        TableColumn<Schema, String> column1 = new TableColumn<>("Name");
-        column1.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().name));
+        TableColumn<SchemaRow, String> column1 = new TableColumn<>("Name");
+        column1.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().schema().name));
         tblSchema.getColumns().add(column1);
-        TableColumn<Schema, String> column2 = new TableColumn<>("Type");
-        column2.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().type.name()));
+        TableColumn<SchemaRow, String> column2 = new TableColumn<>("Type");
+        column2.setCellValueFactory(param -> new SimpleStringProperty(param.getValue().schema().type.name()));
         tblSchema.getColumns().add(column2);
-        tblSchema.setItems(FXCollections.observableArrayList(schemas));
+        ColumnStats[] stats = this.csvReader.getColumnStats();
+        if (stats != null) {
+            TableColumn<SchemaRow, String> column3 = new TableColumn<>("Empty");
+            column3.setCellValueFactory(param -> {
+                ColumnStats columnStats = param.getValue().stats();
+                return new SimpleStringProperty(columnStats == null ? "" : String.valueOf(columnStats.emptyCount));
+            });
+            tblSchema.getColumns().add(column3);
+            TableColumn<SchemaRow, String> column4 = new TableColumn<>("Length");
+            column4.setCellValueFactory(param -> {
+                ColumnStats columnStats = param.getValue().stats();
+                return new SimpleStringProperty(
+                        columnStats == null ? "" : columnStats.minLength + " - " + columnStats.maxLength);
+            });
+            tblSchema.getColumns().add(column4);
+        }
+        List<SchemaRow> rows = new ArrayList<>(schemas.length);
+        for (int i = 0; i < schemas.length; i++) {
+            rows.add(new SchemaRow(schemas[i], stats != null && i < stats.length ? stats[i] : null));
+        }
+        tblSchema.setItems(FXCollections.observableArrayList(rows));
     }
 
     /**
@@ -5,19 +5,25 @@ import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import lehoai.csvtitan.service.CsvUnion;
+import lehoai.csvtitan.service.UnionOptions;
+import lehoai.csvtitan.service.core.CsvConfig;
 import lehoai.csvtitan.service.core.Encoding;
 
 import java.io.File;
+import java.util.List;
+import java.util.function.Function;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 /**
- * Controller for the CSV union screen, which allows users to select two CSV files,
+ * Controller for the CSV union screen, which allows users to select CSV files,
  * configure encoding options, and merge them into a single output file.
  * The union operation is performed in a background thread to ensure the UI remains responsive.
  */
@@ -39,13 +45,11 @@ public class CsvUnionController {
     @FXML
     public Button closeButton; // Button to close the union screen
     @FXML
-    public TextField fileInput1; // TextField to display the path of the first input file
+    public ListView<String> inputFiles; // List of the input files, in output order
     @FXML
-    public Button fileInputBtn1; // Button to select the first input file
+    public Button addFilesBtn; // Button to add input files
     @FXML
-    public TextField fileInput2; // TextField to display the path of the second input file
-    @FXML
-    public Button fileInputBtn2; // Button to select the second input file
+    public Button removeFileBtn; // Button to remove the selected input file
     @FXML
     public TextField fileOutput; // TextField to display the path of the output file
     @FXML
@@ -54,6 +58,10 @@ public class CsvUnionController {
     public Button unionButton; // Button to trigger the union operation
     @FXML
     public ComboBox<String> encodingComboBox; // Dropdown menu to select file encoding
+    @FXML
+    public TextField delimiterField; // TextField to specify the delimiter of the files that are not open
+    @FXML
+    public CheckBox distinctCheckBox; // CheckBox to remove duplicate rows from the output
 
     // Background thread executor for running union tasks
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
@@ -61,6 +69,9 @@ public class CsvUnionController {
     // Listener for handling success events
     private UnionSuccessListener unionSuccessListener;
 
+    // Gives the configuration of a file open in a tab, or null
+    private Function<String, CsvConfig> openFileConfigs = _ -> null;
+
     /**
      * Initializes the controller.
      * Sets up event handlers for buttons and initializes the encoding dropdown menu.
@@ -77,17 +88,17 @@ public class CsvUnionController {
             stage.close();
         });
 
-        // Set up the file input buttons to open file selection dialogs
-        fileInputBtn1.setOnAction(_ -> {
-            File selectedFile = this.selectFile();
-            if (selectedFile != null) {
-                fileInput1.setText(selectedFile.getAbsolutePath());
+        // Set up the file input buttons to add and remove input files
+        addFilesBtn.setOnAction(_ -> {
+            List<File> selectedFiles = this.selectFiles();
+            if (selectedFiles != null) {
+                selectedFiles.forEach(file -> inputFiles.getItems().add(file.getAbsolutePath()));
             }
         });
-        fileInputBtn2.setOnAction(_ -> {
-            File selectedFile = this.selectFile();
-            if (selectedFile != null) {
-                fileInput2.setText(selectedFile.getAbsolutePath());
+        removeFileBtn.setOnAction(_ -> {
+            int index = inputFiles.getSelectionModel().getSelectedIndex();
+            if (index >= 0) {
+                inputFiles.getItems().remove(index);
             }
         });
 
@@ -108,11 +119,14 @@ public class CsvUnionController {
             unionButton.setText("Processing...");
 
             // Create and configure the background task for the union operation
+            UnionOptions options = new UnionOptions();
+            options.distinct = distinctCheckBox.isSelected();
+            List<String> files = List.copyOf(inputFiles.getItems());
             BackgroundTask task = new BackgroundTask(
-                    fileInput1.getText(),
-                    fileInput2.getText(),
+                    files,
+                    files.stream().map(this::configOf).toList(),
                     fileOutput.getText(),
-                    encodingComboBox.getSelectionModel().getSelectedItem());
+                    options);
 
             // Handle success of the background task
             task.setOnSucceeded(_ -> {
@@ -133,6 +147,11 @@ public class CsvUnionController {
             task.setOnFailed(_ -> {
                 unionButton.setDisable(false);
                 unionButton.setText("Union");
+                Alert alert = new Alert(Alert.AlertType.ERROR);
+                alert.setTitle("Error");
+                alert.setHeaderText("Union failed");
+                alert.setContentText(task.getException() != null ? task.getException().getMessage() : null);
+                alert.showAndWait();
             });
 
             // Submit the task to the executor service
@@ -150,18 +169,45 @@ public class CsvUnionController {
     }
 
     /**
-     * Opens a file chooser dialog for selecting a file.
+     * Sets where the configurations of the files open in tabs are found.
+     *
+     * @param openFileConfigs gives the configuration of an open file from its path, or {@code null}
+     */
+    public void setOpenFileConfigs(Function<String, CsvConfig> openFileConfigs) {
+        this.openFileConfigs = openFileConfigs;
+    }
+
+    /**
+     * Gives the configuration of an input: the one of its tab if the file is open,
+     * otherwise the delimiter and encoding of this screen.
+     *
+     * @param file the path to the input
+     * @return how the input is read
+     */
+    private CsvConfig configOf(String file) {
+        CsvConfig config = openFileConfigs.apply(file);
+        if (config != null) {
+            return config;
+        }
+        config = new CsvConfig();
+        config.delimiter = "".equals(delimiterField.getText()) ? "," : delimiterField.getText();
+        config.encode = encodingComboBox.getSelectionModel().getSelectedItem();
+        return config;
+    }
+
+    /**
+     * Opens a file chooser dialog for selecting files.
      *
-     * @return the selected {@link File}, or {@code null} if no file is selected
+     * @return the selected files, or {@code null} if no file is selected
      */
-    private File selectFile() {
+    private List<File> selectFiles() {
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().addAll(
                 new FileChooser.ExtensionFilter("CSV Files", "*.csv"),
                 new FileChooser.ExtensionFilter("Text Files", "*.txt"),
                 new FileChooser.ExtensionFilter("All Files", "*.*")
         );
-        return fileChooser.showOpenDialog(fileInputBtn1.getScene().getWindow());
+        return fileChooser.showOpenMultipleDialog(addFilesBtn.getScene().getWindow());
     }
 
     /**
@@ -170,24 +216,24 @@ public class CsvUnionController {
      */
     static class BackgroundTask extends Task<Void> {
 
-        private final String file1;
-        private final String file2;
+        private final List<String> files;
+        private final List<CsvConfig> configs;
         private final String fileOutput;
-        private final String encoding;
+        private final UnionOptions options;
 
         /**
-         * Constructs a new {@code BackgroundTask} for merging two CSV files.
+         * Constructs a new {@code BackgroundTask} for merging CSV files.
          *
-         * @param file1      the absolute path of the first input file
-         * @param file2      the absolute path of the second input file
+         * @param files      the absolute paths of the input files, in output order
+         * @param configs    how every input file is read, the output is written like the first one
          * @param fileOutput the absolute path of the output file
-         * @param encoding   the character encoding to use for reading and writing
+         * @param options    the union options, such as removing duplicate rows
          */
-        public BackgroundTask(String file1, String file2, String fileOutput, String encoding) {
-            this.file1 = file1;
-            this.file2 = file2;
+        public BackgroundTask(List<String> files, List<CsvConfig> configs, String fileOutput, UnionOptions options) {
+            this.files = files;
+            this.configs = configs;
             this.fileOutput = fileOutput;
-            this.encoding = encoding;
+            this.options = options;
         }
 
         /**
@@ -198,8 +244,8 @@ public class CsvUnionController {
          */
         @Override
         protected Void call() throws Exception {
-            CsvUnion csvUnion = new CsvUnion(encoding);
-            csvUnion.union(file1, file2, fileOutput);
+            CsvUnion csvUnion = new CsvUnion(configs.getFirst().encode);
+            csvUnion.union(files, configs, fileOutput, options);
             return null;
         }
     }
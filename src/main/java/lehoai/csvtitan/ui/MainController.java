@@ -9,9 +9,13 @@ import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import lehoai.csvtitan.CsvTitanApplication;
+import lehoai.csvtitan.service.core.CsvConfig;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Controller for the main screen of the application.
@@ -31,6 +35,11 @@ public class MainController implements CsvUnionController.UnionSuccessListener {
      */
     private Stage primaryStage;
 
+    /**
+     * Controllers of the open tabs.
+     */
+    private final List<CsvTabController> tabControllers = new ArrayList<>();
+
     /**
      * Opens a file dialog to allow the user to select a CSV file, then creates a new tab
      * to display and interact with the selected file.
@@ -59,6 +68,7 @@ public class MainController implements CsvUnionController.UnionSuccessListener {
             Pane root = loader.load();
             CsvUnionController controller = loader.getController();
             controller.setUnionSuccessListener(this);
+            controller.setOpenFileConfigs(this::configOfOpenFile);
             // Configure the dialog
             Stage dialog = new Stage();
             dialog.initModality(Modality.APPLICATION_MODAL);
@@ -100,6 +110,7 @@ public class MainController implements CsvUnionController.UnionSuccessListener {
                 CsvTabController controller = new CsvTabController();
                 controller.setFilePath(path);
                 controller.setMainController(MainController.this);
+                tabControllers.add(controller);
                 return controller;
             });
             mainTabPane.getTabs().add(childViewLoader.load());
@@ -114,6 +125,32 @@ public class MainController implements CsvUnionController.UnionSuccessListener {
         }
     }
 
+    /**
+     * Forgets a closed tab.
+     *
+     * @param controller the controller of the closed tab
+     */
+    public void onCsvTabClosed(CsvTabController controller) {
+        tabControllers.remove(controller);
+    }
+
+    /**
+     * Finds the configuration of a file open in a tab.
+     *
+     * @param path path to a CSV file
+     * @return the configuration of its tab, or {@code null} if the file is not open
+     */
+    private CsvConfig configOfOpenFile(String path) {
+        for (CsvTabController controller : tabControllers) {
+            if (controller.getFilePath() != null
+                    && Paths.get(controller.getFilePath()).toAbsolutePath().normalize()
+                    .equals(Paths.get(path).toAbsolutePath().normalize())) {
+                return controller.getCsvConfig();
+            }
+        }
+        return null;
+    }
+
     /**
      * Callback after union success
      *
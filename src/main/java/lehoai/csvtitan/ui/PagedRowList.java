@@ -0,0 +1,35 @@
+package lehoai.csvtitan.ui;
+
+import javafx.collections.ObservableListBase;
+import lehoai.csvtitan.service.PagedRowSource;
+
+import java.util.List;
+
+/**
+ * Read-only observable list backed by a {@link PagedRowSource}.
+ * The {@link javafx.scene.control.TableView} only asks for the rows it displays,
+ * so the grid can scroll through the whole file while a few pages are held in memory.
+ */
+public class PagedRowList extends ObservableListBase<List<String>> {
+
+    private final PagedRowSource source;
+
+    /**
+     * Constructs a list over the given source.
+     *
+     * @param source the paged rows of the file
+     */
+    public PagedRowList(PagedRowSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public List<String> get(int index) {
+        return source.get(index);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, source.size());
+    }
+}
@@ -7,10 +7,14 @@ module csvtitan {
     exports lehoai.csvtitan.ui;
     exports lehoai.csvtitan.service;
     exports lehoai.csvtitan.service.core;
+    exports lehoai.csvtitan.service.dedup;
+    exports lehoai.csvtitan.service.parse;
     exports lehoai.csvtitan.service.sort;
     opens lehoai.csvtitan to javafx.fxml;
     opens lehoai.csvtitan.ui to javafx.fxml;
     opens lehoai.csvtitan.service to javafx.fxml;
     opens lehoai.csvtitan.service.core to javafx.fxml;
+    opens lehoai.csvtitan.service.dedup to javafx.fxml;
+    opens lehoai.csvtitan.service.parse to javafx.fxml;
     opens lehoai.csvtitan.service.sort to javafx.fxml;
 }
\ No newline at end of file
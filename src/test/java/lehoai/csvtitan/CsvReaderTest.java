@@ -7,7 +7,11 @@ import lehoai.csvtitan.service.core.Type;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 
@@ -49,4 +53,35 @@ public class CsvReaderTest {
         assertEquals(5, data.size());
         assertEquals("mj9346", data.get(3).get(2));
     }
+
+    @Test
+    void seekWithIndex() throws IOException {
+        Path csvFile = Files.createTempFile("seek", ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csvFile))) {
+            writer.print("id,comment\n");
+            for (int i = 0; i < 5500; i++) {
+                writer.print(i + ",\"multi\nline " + i + "\"\n");
+            }
+        }
+        CsvConfig config = new CsvConfig();
+        config.bufferedLines = 10;
+        CsvReader csvReader = new CsvReader(csvFile.toString(), config);
+        csvReader.readMeta();
+        assertEquals(5500, csvReader.buildIndex(4).getRowCount());
+
+        csvReader.seek(3456);
+        List<CSVRecord> data = csvReader.readLines();
+        assertEquals("3456", data.get(0).get("id"));
+        assertEquals("multi\nline 3465", data.get(9).get(1));
+
+        assertEquals(5490, csvReader.seekLastPage());
+        data = csvReader.readLines();
+        assertEquals(10, data.size());
+        assertEquals("5499", data.get(9).get(0));
+
+        csvReader.seek(0);
+        assertEquals("0", csvReader.readLine().get(0));
+        csvReader.close();
+        new File(csvFile.toString()).deleteOnExit();
+    }
 }
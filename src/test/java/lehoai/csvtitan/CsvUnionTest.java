@@ -2,12 +2,15 @@ package lehoai.csvtitan;
 
 import lehoai.csvtitan.service.CsvReader;
 import lehoai.csvtitan.service.CsvUnion;
+import lehoai.csvtitan.service.UnionOptions;
 import lehoai.csvtitan.service.core.CsvConfig;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
@@ -33,4 +36,100 @@ public class CsvUnionTest {
         File f = new File(outCsv.toString());
         f.deleteOnExit();
     }
+
+    @Test
+    void manyFilesUnion() throws IOException {
+        // Multi-line quoted header, BOM, LF endings, missing final line break and a header-only file.
+        String header = "\"a\nb\",c";
+        List<Path> inputs = List.of(
+                createFile(header + "\r\n1,2\r\n", StandardCharsets.UTF_8),
+                createFile("\uFEFF" + header + "\n3,4\n", StandardCharsets.UTF_8),
+                createFile(header + "\r\n5,6", StandardCharsets.UTF_8),
+                createFile(header + "\r\n", StandardCharsets.UTF_8),
+                createFile(header + "\r\n7,\"8\r\n9\"\r\n", StandardCharsets.UTF_8));
+        List<String> files = inputs.stream().map(Path::toString).toList();
+        String expected = header + "\r\n1,2\r\n3,4\n5,6\r\n7,\"8\r\n9\"\r\n";
+
+        for (int parallelism : new int[]{1, 4}) {
+            Path outCsv = Files.createTempFile("union-out", ".csv");
+            UnionOptions options = new UnionOptions();
+            options.parallelism = parallelism;
+            new CsvUnion("UTF-8").union(files, outCsv.toString(), options);
+            assertEquals(expected, Files.readString(outCsv));
+            new File(outCsv.toString()).deleteOnExit();
+        }
+        inputs.forEach(p -> new File(p.toString()).deleteOnExit());
+    }
+
+    @Test
+    void utf16Union() throws IOException {
+        Path file1 = createFile("id,name\r\n1,\"a\r\nb\"", StandardCharsets.UTF_16);
+        Path file2 = createFile("id,name\r\n2,c\r\n", StandardCharsets.UTF_16);
+        Path outCsv = Files.createTempFile("union-out", ".csv");
+        new CsvUnion("UTF-16").union(file1.toString(), file2.toString(), outCsv.toString());
+
+        assertEquals("id,name\r\n1,\"a\r\nb\"\r\n2,c\r\n", Files.readString(outCsv, StandardCharsets.UTF_16));
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(file1.toString()).deleteOnExit();
+        new File(file2.toString()).deleteOnExit();
+    }
+
+    @Test
+    void alignedUnion() throws IOException {
+        List<Path> inputs = List.of(
+                createFile("id,name\r\n1,a\r\n", StandardCharsets.UTF_8),
+                createFile("name,id,extra\r\nb,2,x\r\n", StandardCharsets.UTF_8),
+                createFile("id\r\n3\r\n", StandardCharsets.UTF_8),
+                createFile("id;name\r\n4;\"\u00e9;\"\r\n", StandardCharsets.ISO_8859_1),
+                createFile("id,name\r\n5,e\r\n", StandardCharsets.UTF_8));
+        List<String> files = inputs.stream().map(Path::toString).toList();
+        CsvConfig latin = new CsvConfig();
+        latin.encode = "ISO-8859-1";
+        latin.delimiter = ";";
+        List<CsvConfig> configs = List.of(new CsvConfig(), new CsvConfig(), new CsvConfig(), latin, new CsvConfig());
+
+        Path outCsv = Files.createTempFile("union-out", ".csv");
+        UnionOptions options = new UnionOptions();
+        new CsvUnion("UTF-8").union(files, configs, outCsv.toString(), options);
+        assertEquals("id,name,extra\r\n1,a,\r\n2,b,x\r\n3,,\r\n4,\u00e9;,\r\n5,e,\r\n", Files.readString(outCsv));
+
+        options.dropExtraColumns = true;
+        new CsvUnion("UTF-8").union(files, configs, outCsv.toString(), options);
+        assertEquals("id,name\r\n1,a\r\n2,b\r\n3,\r\n4,\u00e9;\r\n5,e\r\n", Files.readString(outCsv));
+
+        new File(outCsv.toString()).deleteOnExit();
+        inputs.forEach(p -> new File(p.toString()).deleteOnExit());
+    }
+
+    @Test
+    void semicolonAlignedUnion() throws IOException {
+        List<Path> inputs = List.of(
+                createFile("id;name\r\n1;\"a;b\"\r\n", StandardCharsets.UTF_8),
+                createFile("name;id;extra\r\nc;2;x\r\n", StandardCharsets.UTF_8));
+        List<String> files = inputs.stream().map(Path::toString).toList();
+        CsvConfig config = new CsvConfig();
+        config.delimiter = ";";
+
+        Path outCsv = Files.createTempFile("union-out", ".csv");
+        new CsvUnion("UTF-8").union(files, List.of(config, config), outCsv.toString(), new UnionOptions());
+        assertEquals("id;name;extra\r\n1;\"a;b\";\r\n2;c;x\r\n", Files.readString(outCsv));
+
+        // Without the delimiter, the headers can't be aligned and duplicates can't be found.
+        assertThrows(IllegalArgumentException.class,
+                () -> new CsvUnion("UTF-8").union(files, outCsv.toString(), new UnionOptions()));
+        UnionOptions distinct = new UnionOptions();
+        distinct.distinct = true;
+        assertThrows(IllegalArgumentException.class,
+                () -> new CsvUnion("UTF-8").union(List.of(files.getFirst()), outCsv.toString(), distinct));
+
+        new File(outCsv.toString()).deleteOnExit();
+        inputs.forEach(p -> new File(p.toString()).deleteOnExit());
+    }
+
+    private static Path createFile(String content, Charset charset) throws IOException {
+        Path csvFile = Files.createTempFile("union-in", ".csv");
+        Files.writeString(csvFile, content, charset);
+        return csvFile;
+    }
 }
@@ -0,0 +1,125 @@
+package lehoai.csvtitan;
+
+import lehoai.csvtitan.service.CsvUnion;
+import lehoai.csvtitan.service.UnionOptions;
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.dedup.DedupOptions;
+import lehoai.csvtitan.service.dedup.Deduplicator;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeduplicatorTest {
+
+    @Test
+    void firstWins() throws IOException {
+        Path input = createFile("\uFEFFid,name\n1,a\n2,b\n1,a\n1,\"a\"\n3,\"c\r\nd\"\n2,b\n3,\"c\r\nd\"\n", StandardCharsets.UTF_8);
+        Path output = Files.createTempFile("dedup-out", ".csv");
+
+        long kept = new Deduplicator().dedup(input.toString(), new CsvConfig(), output.toString(), new DedupOptions());
+
+        // Rows are compared by value and copied as they are, with the header and line breaks of the input.
+        assertEquals(3, kept);
+        assertEquals("\uFEFFid,name\n1,a\n2,b\n3,\"c\r\nd\"\n", Files.readString(output));
+
+        new File(input.toString()).deleteOnExit();
+        new File(output.toString()).deleteOnExit();
+    }
+
+    @Test
+    void lastWinsByKey() throws IOException {
+        Path input = createFile("id;value\r\n1;\u00e9\r\n2;b\r\n1;c\r\n3;d\r\n2;e\r\n", StandardCharsets.UTF_16);
+        Path output = Files.createTempFile("dedup-out", ".csv");
+        CsvConfig config = new CsvConfig();
+        config.encode = "UTF-16";
+        config.delimiter = ";";
+        DedupOptions options = new DedupOptions();
+        options.keyColumns = new int[]{0};
+        options.keepLast = true;
+
+        long kept = new Deduplicator().dedup(input.toString(), config, output.toString(), options);
+
+        assertEquals(3, kept);
+        assertEquals("id;value\r\n1;c\r\n3;d\r\n2;e\r\n", Files.readString(output, StandardCharsets.UTF_16));
+
+        new File(input.toString()).deleteOnExit();
+        new File(output.toString()).deleteOnExit();
+    }
+
+    @Test
+    void partitionedDedup() throws IOException {
+        Random random = new Random(42);
+        StringBuilder content = new StringBuilder("key,value\r\n");
+        Map<String, String> first = new LinkedHashMap<>();
+        Map<String, String> last = new LinkedHashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            String key = "k" + random.nextInt(5_000);
+            String row = key + "," + i;
+            content.append(row).append("\r\n");
+            first.putIfAbsent(key, row);
+            last.remove(key);
+            last.put(key, row);
+        }
+        Path input = createFile(content.toString(), StandardCharsets.UTF_8);
+        Path output = Files.createTempFile("dedup-out", ".csv");
+
+        for (boolean keepLast : new boolean[]{false, true}) {
+            DedupOptions options = new DedupOptions();
+            options.keyColumns = new int[]{0};
+            options.keepLast = keepLast;
+            // A few slots: the rows are spilled into partitions, which are partitioned again.
+            options.memoryBudget = 1;
+
+            long kept = new Deduplicator().dedup(input.toString(), new CsvConfig(), output.toString(), options);
+
+            Map<String, String> expected = keepLast ? last : first;
+            List<String> rows = expected.values().stream()
+                    .sorted((a, b) -> Integer.compare(sequence(a), sequence(b)))
+                    .toList();
+            assertEquals(expected.size(), kept);
+            assertEquals("key,value\r\n" + String.join("\r\n", rows) + "\r\n", Files.readString(output));
+        }
+
+        new File(input.toString()).deleteOnExit();
+        new File(output.toString()).deleteOnExit();
+    }
+
+    @Test
+    void distinctUnion() throws IOException {
+        Path file1 = createFile("id,name\r\n1,a\r\n2,b\r\n1,a\r\n", StandardCharsets.UTF_8);
+        Path file2 = createFile("name,id\r\nb,2\r\nc,3\r\n", StandardCharsets.UTF_8);
+        Path output = Files.createTempFile("union-out", ".csv");
+        UnionOptions options = new UnionOptions();
+        options.distinct = true;
+
+        new CsvUnion("UTF-8").union(List.of(file1.toString(), file2.toString()), List.of(new CsvConfig(), new CsvConfig()),
+                output.toString(), options);
+
+        assertEquals("id,name\r\n1,a\r\n2,b\r\n3,c\r\n", Files.readString(output));
+
+        new File(file1.toString()).deleteOnExit();
+        new File(file2.toString()).deleteOnExit();
+        new File(output.toString()).deleteOnExit();
+    }
+
+    private static int sequence(String row) {
+        return Integer.parseInt(row.substring(row.indexOf(',') + 1));
+    }
+
+    private static Path createFile(String content, Charset charset) throws IOException {
+        Path csvFile = Files.createTempFile("dedup-in", ".csv");
+        Files.writeString(csvFile, content, charset);
+        return csvFile;
+    }
+}
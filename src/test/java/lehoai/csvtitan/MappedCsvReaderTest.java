@@ -0,0 +1,112 @@
+package lehoai.csvtitan;
+
+import lehoai.csvtitan.service.CsvReader;
+import lehoai.csvtitan.service.MappedCsvReader;
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.core.Schema;
+import lehoai.csvtitan.service.core.Type;
+import lehoai.csvtitan.service.parse.CsvRow;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedCsvReaderTest {
+
+    @Test
+    void readNormalFile() throws IOException {
+        String csvFile = Objects.requireNonNull(MappedCsvReaderTest.class.getResource("normal.csv")).getFile();
+        MappedCsvReader csvReader = new MappedCsvReader(csvFile, new CsvConfig());
+        csvReader.readMeta();
+        Schema[] schemas = csvReader.getSchemas();
+
+        assertEquals(8, schemas.length);
+        assertEquals("First name", schemas[4].name);
+        assertEquals(Type.INT, schemas[1].type);
+
+        List<CsvRow> data = csvReader.readLines();
+        assertEquals(5, data.size());
+        assertEquals("14ju73", data.get(3).get(2));
+        assertFalse(csvReader.hasNext());
+        csvReader.close();
+    }
+
+    @Test
+    void readSemicolonFile() throws IOException {
+        String csvFile = Objects.requireNonNull(MappedCsvReaderTest.class.getResource("semicolon.csv")).getFile();
+
+        CsvConfig csvConfig = new CsvConfig();
+        csvConfig.delimiter = ";";
+        MappedCsvReader csvReader = new MappedCsvReader(csvFile, csvConfig);
+        csvReader.readMeta();
+        Schema[] schemas = csvReader.getSchemas();
+
+        assertEquals(7, schemas.length);
+        assertEquals("Last name", schemas[4].name);
+        assertEquals(Type.INT, schemas[0].type);
+
+        CsvRow row = csvReader.readLine();
+        assertEquals("9012", row.get(0));
+        csvReader.close();
+    }
+
+    @Test
+    void readQuotedFile() throws IOException {
+        String csvFile = Objects.requireNonNull(MappedCsvReaderTest.class.getResource("quoted.csv")).getFile();
+        MappedCsvReader csvReader = new MappedCsvReader(csvFile, new CsvConfig());
+        csvReader.readMeta();
+
+        List<CsvRow> data = csvReader.readLines();
+        assertEquals(3, data.size());
+        assertEquals("Doe, John", data.get(0).get(1));
+        assertEquals("said \"hi\"\r\nthen left", data.get(0).get(2));
+        assertEquals("", data.get(1).get(2));
+        assertEquals(3, data.get(1).size());
+        assertEquals("", data.get(2).get(1));
+        assertEquals("3,\"\",plain", new String(data.get(2).getRawBytes()));
+        csvReader.close();
+    }
+
+    @Test
+    void unsupportedConfig() {
+        CsvConfig config = new CsvConfig();
+        config.encode = "UTF-16";
+        assertFalse(MappedCsv.supports(config));
+        // Trailing bytes of Shift_JIS characters can be equal to ASCII delimiters.
+        config.encode = "SHIFT-JIS";
+        assertFalse(MappedCsv.supports(config));
+        config.encode = "EUC-JP";
+        assertTrue(MappedCsv.supports(config));
+        config.encode = "ISO-8859-15";
+        assertTrue(MappedCsv.supports(config));
+        config.delimiter = "||";
+        assertFalse(MappedCsv.supports(config));
+    }
+
+    @Test
+    void shiftJisPipe() throws IOException {
+        // The second byte of \u30dd is 0x7C, the pipe: the file must not be split at byte level.
+        Path csvFile = Files.createTempFile("sjis", ".csv");
+        Files.writeString(csvFile, "id|name|group\r\n1|\u30dd|a\r\n", Charset.forName("Shift_JIS"));
+        CsvConfig config = new CsvConfig();
+        config.encode = "Shift_JIS";
+        config.delimiter = "|";
+
+        assertFalse(MappedCsv.supports(config));
+        assertThrows(IOException.class, () -> new MappedCsvReader(csvFile.toString(), config));
+
+        CsvReader csvReader = new CsvReader(csvFile.toString(), config);
+        csvReader.readMeta();
+        assertEquals(List.of("1", "\u30dd", "a"), csvReader.readLine().toList());
+        csvReader.close();
+        new File(csvFile.toString()).deleteOnExit();
+    }
+}
@@ -2,17 +2,29 @@ package lehoai.csvtitan;
 
 import lehoai.csvtitan.service.CsvReader;
 import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.core.Type;
 import lehoai.csvtitan.service.sort.MergeSort;
+import lehoai.csvtitan.service.sort.RunStrategy;
+import lehoai.csvtitan.service.sort.SortColumn;
+import lehoai.csvtitan.service.sort.SortOptions;
+import lehoai.csvtitan.service.sort.SortSpec;
 import org.apache.commons.csv.CSVRecord;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +51,479 @@ public class MergeSortTest {
         f.deleteOnExit();
     }
 
+    @Test
+    void manyChunksSort() throws IOException {
+        Path inCsv = createFile(5000);
+        for (boolean isAsc : new boolean[]{true, false}) {
+            Path outCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), 1, isAsc, 70);
+
+            List<CSVRecord> data = readAll(outCsv);
+            assertEquals(5000, data.size());
+            for (int i = 1; i < data.size(); i++) {
+                int cmp = data.get(i).get(1).compareTo(data.get(i - 1).get(1));
+                assertTrue(isAsc ? cmp >= 0 : cmp <= 0, "row " + i);
+            }
+            new File(outCsv.toString()).deleteOnExit();
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void typedSort() throws IOException {
+        Path inCsv = createFile(3000);
+        for (int col : new int[]{2, 3}) {
+            for (boolean isAsc : new boolean[]{true, false}) {
+                Path outCsv = Files.createTempFile("sort-out", ".csv");
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), col, isAsc, 70);
+
+                List<CSVRecord> data = readAll(outCsv);
+                assertEquals(3000, data.size());
+                for (int i = 1; i < data.size(); i++) {
+                    int cmp = Double.compare(Double.parseDouble(data.get(i).get(col)), Double.parseDouble(data.get(i - 1).get(col)));
+                    assertTrue(isAsc ? cmp >= 0 : cmp <= 0, "column " + col + " row " + i);
+                }
+                new File(outCsv.toString()).deleteOnExit();
+            }
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void budgetedSort() throws IOException {
+        SortOptions options = new SortOptions();
+        options.memoryBudget = 16 * 1024;
+        options.parallelism = 4;
+        assertEquals(1, options.effectiveParallelism());
+        assertEquals(8 * 1024, options.runBudget());
+
+        Path inCsv = createFile(5000);
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), new SortColumn(2), options);
+
+        List<CSVRecord> data = readAll(outCsv);
+        assertEquals(5000, data.size());
+        for (int i = 1; i < data.size(); i++) {
+            assertTrue(Integer.parseInt(data.get(i).get(2)) >= Integer.parseInt(data.get(i - 1).get(2)), "row " + i);
+        }
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+
+        options.memoryBudget = 10 * SortOptions.MIN_RUN_BYTES;
+        assertEquals(4, options.effectiveParallelism());
+        assertEquals(2 * SortOptions.MIN_RUN_BYTES, options.runBudget());
+    }
+
+    @Test
+    void multiPassMerge() throws IOException {
+        Path inCsv = createFile(5000);
+        for (boolean compress : new boolean[]{false, true}) {
+            SortOptions options = new SortOptions();
+            options.maxRunRows = 70;
+            options.maxFanIn = 3;
+            options.compressRuns = compress;
+
+            Path outCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), new SortColumn(2), options);
+
+            List<CSVRecord> data = readAll(outCsv);
+            assertEquals(5000, data.size());
+            for (int i = 1; i < data.size(); i++) {
+                int cmp = Integer.compare(Integer.parseInt(data.get(i).get(2)), Integer.parseInt(data.get(i - 1).get(2)));
+                assertTrue(cmp > 0 || (cmp == 0 && Integer.parseInt(data.get(i).get(0)) > Integer.parseInt(data.get(i - 1).get(0))), "row " + i);
+            }
+            new File(outCsv.toString()).deleteOnExit();
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void compositeSort() throws IOException {
+        SortOptions options = new SortOptions();
+        options.maxRunRows = 70;
+        SortSpec spec = new SortSpec(new SortColumn(4, Type.STRING, true), new SortColumn(2, Type.INT, false),
+                new SortColumn(0, Type.INT, true));
+
+        Path inCsv = createFile(5000);
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+
+        List<CSVRecord> data = readAll(outCsv);
+        assertEquals(5000, data.size());
+        Comparator<CSVRecord> expected = Comparator.<CSVRecord, String>comparing(r -> r.get(4))
+                .thenComparing(r -> Integer.parseInt(r.get(2)), Comparator.reverseOrder())
+                .thenComparing(r -> Integer.parseInt(r.get(0)));
+        for (int i = 1; i < data.size(); i++) {
+            assertTrue(expected.compare(data.get(i - 1), data.get(i)) < 0, "row " + i);
+        }
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void topRows() throws IOException {
+        Path inCsv = createFile(5000);
+        SortSpec spec = new SortSpec(new SortColumn(4, Type.STRING, false), new SortColumn(3, Type.DOUBLE, true));
+        Path fullCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), fullCsv.toString(), spec, new SortOptions());
+        List<String> full = Files.readAllLines(fullCsv);
+
+        for (long limit : new long[]{1, 100, 10000}) {
+            SortOptions options = new SortOptions();
+            options.limit = limit;
+            Path outCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+            assertEquals(full.subList(0, (int) Math.min(full.size(), limit + 1)), Files.readAllLines(outCsv));
+            new File(outCsv.toString()).deleteOnExit();
+        }
+        new File(fullCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void presortedAndInMemorySort() throws IOException {
+        Path inCsv = createFile(5000);
+        for (SortColumn column : new SortColumn[]{new SortColumn(0, Type.INT, true), new SortColumn(0, Type.INT, false),
+                new SortColumn(2, Type.INT, true)}) {
+            // Spilled in runs of 70 rows
+            SortOptions options = new SortOptions();
+            options.maxRunRows = 70;
+            Path chunkedCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), chunkedCsv.toString(), column, options);
+
+            // Sorted in memory
+            Path inMemoryCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), inMemoryCsv.toString(), column, new SortOptions());
+
+            List<String> chunked = Files.readAllLines(chunkedCsv);
+            assertEquals(5001, chunked.size());
+            assertEquals(chunked, Files.readAllLines(inMemoryCsv));
+            if (column.index == 0) {
+                for (int i = 1; i < chunked.size(); i++) {
+                    int id = Integer.parseInt(chunked.get(i).substring(0, chunked.get(i).indexOf(',')));
+                    assertEquals(column.asc ? i - 1 : 5000 - i, id);
+                }
+            }
+            new File(chunkedCsv.toString()).deleteOnExit();
+            new File(inMemoryCsv.toString()).deleteOnExit();
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void replacementSelectionSort() throws IOException {
+        Path inCsv = createFile(5000);
+        for (SortColumn column : new SortColumn[]{new SortColumn(2, Type.INT, true), new SortColumn(4, Type.STRING, false),
+                new SortColumn(0, Type.INT, true)}) {
+            List<String> expected = null;
+            for (RunStrategy strategy : RunStrategy.values()) {
+                SortOptions options = new SortOptions();
+                options.maxRunRows = 70;
+                options.maxFanIn = 4;
+                options.runStrategy = strategy;
+                Path outCsv = Files.createTempFile("sort-out", ".csv");
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), column, options);
+
+                List<String> lines = Files.readAllLines(outCsv);
+                assertEquals(5001, lines.size());
+                if (expected == null) {
+                    expected = lines;
+                } else {
+                    assertEquals(expected, lines, strategy + " on column " + column.index);
+                }
+                new File(outCsv.toString()).deleteOnExit();
+            }
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void tagSort() throws IOException {
+        Path inCsv = createFile(5000);
+        SortSpec spec = new SortSpec(new SortColumn(1, Type.STRING, true), new SortColumn(3, Type.DOUBLE, false));
+        Path expectedCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), expectedCsv.toString(), spec, new SortOptions());
+        List<String> expected = Files.readAllLines(expectedCsv);
+
+        for (int maxRunRows : new int[]{0, 70}) {
+            for (long limit : new long[]{0, 10}) {
+                SortOptions options = new SortOptions();
+                options.tagSort = true;
+                options.maxRunRows = maxRunRows;
+                options.limit = limit;
+                Path outCsv = Files.createTempFile("sort-out", ".csv");
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+                assertEquals(limit == 0 ? expected : expected.subList(0, (int) limit + 1), Files.readAllLines(outCsv));
+                new File(outCsv.toString()).deleteOnExit();
+            }
+        }
+        new File(expectedCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void partitionedSort() throws IOException {
+        Path inCsv = createFile(5000);
+        SortSpec spec = new SortSpec(new SortColumn(4, Type.DATE, true), new SortColumn(0, Type.INT, false));
+        Path expectedCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), expectedCsv.toString(), spec, new SortOptions());
+        List<String> expected = Files.readAllLines(expectedCsv);
+
+        for (int maxRunRows : new int[]{0, 70}) {
+            for (boolean tagSort : new boolean[]{false, true}) {
+                SortOptions options = new SortOptions();
+                options.partitions = 4;
+                options.maxRunRows = maxRunRows;
+                options.tagSort = tagSort;
+                options.compressRuns = tagSort;
+                Path outCsv = Files.createTempFile("sort-out", ".csv");
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+                assertEquals(expected, Files.readAllLines(outCsv));
+                new File(outCsv.toString()).deleteOnExit();
+            }
+        }
+
+        SortOptions options = new SortOptions();
+        options.partitions = 4;
+        options.partFiles = true;
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+        List<String> joined = new ArrayList<>(expected.subList(0, 1));
+        for (int i = 0; i < options.partitions; i++) {
+            Path part = MergeSort.partFile(outCsv.toString(), i);
+            List<String> lines = Files.readAllLines(part);
+            assertEquals(expected.getFirst(), lines.getFirst());
+            assertTrue(lines.size() > 1);
+            joined.addAll(lines.subList(1, lines.size()));
+            new File(part.toString()).deleteOnExit();
+        }
+        assertEquals(expected, joined);
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(expectedCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void collatedSort() throws IOException {
+        List<String> names = List.of("zèbre", "Zoo", "école", "ecole", "Eclair", "apple", "Apple", "été", "カタカナ", "かたかな", "がっこう", "漢字");
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        StringBuilder content = new StringBuilder("id,name\r\n");
+        for (int i = 0; i < names.size(); i++) {
+            content.append(i).append(',').append(names.get(i)).append("\r\n");
+        }
+        Files.writeString(inCsv, content);
+
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        for (Locale locale : new Locale[]{Locale.FRENCH, Locale.JAPANESE}) {
+            for (int maxRunRows : new int[]{0, 3}) {
+                SortColumn column = new SortColumn(1, Type.STRING, true);
+                column.locale = locale;
+                SortOptions options = new SortOptions();
+                options.maxRunRows = maxRunRows;
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), column, options);
+                List<String> expected = names.stream().sorted(Collator.getInstance(locale)).toList();
+                assertEquals(expected, readAll(outCsv).stream().map(r -> r.get(1)).toList());
+            }
+        }
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void offHeapSort() throws IOException {
+        Path inCsv = createFile(5000);
+        SortSpec spec = new SortSpec(new SortColumn(2, Type.INT, true), new SortColumn(1, Type.STRING, false));
+        Path expectedCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), expectedCsv.toString(), spec, new SortOptions());
+        List<String> expected = Files.readAllLines(expectedCsv);
+
+        for (long memoryBudget : new long[]{0, 16 * 1024, 10 * SortOptions.MIN_RUN_BYTES}) {
+            for (int maxRunRows : new int[]{0, 70}) {
+                SortOptions options = new SortOptions();
+                options.offHeap = true;
+                options.memoryBudget = memoryBudget;
+                options.maxRunRows = maxRunRows;
+                options.tagSort = maxRunRows > 0;
+                Path outCsv = Files.createTempFile("sort-out", ".csv");
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+                assertEquals(expected, Files.readAllLines(outCsv));
+                new File(outCsv.toString()).deleteOnExit();
+            }
+        }
+
+        new File(expectedCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void radixSort() throws IOException {
+        Path inCsv = createFile(200000);
+        SortSpec spec = new SortSpec(new SortColumn(2, Type.INT, true), new SortColumn(3, Type.DOUBLE, false));
+        List<String> expected = readAll(inCsv).stream()
+                .sorted(Comparator.<CSVRecord>comparingInt(r -> Integer.parseInt(r.get(2)))
+                        .thenComparing(r -> Double.parseDouble(r.get(3)), Comparator.reverseOrder()))
+                .map(r -> r.get(0))
+                .toList();
+
+        for (int maxRunRows : new int[]{0, 5000}) {
+            SortOptions options = new SortOptions();
+            options.maxRunRows = maxRunRows;
+            Path outCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), spec, options);
+            assertEquals(expected, readAll(outCsv).stream().map(r -> r.get(0)).toList());
+            new File(outCsv.toString()).deleteOnExit();
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void nullsSort() throws IOException {
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        Files.writeString(inCsv, "id,amount\r\n1,10\r\n2,\r\n3,-5\r\n4,abc\r\n5,100\r\n6,-5\r\n");
+
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        SortColumn column = new SortColumn(1, Type.INT, false);
+        SortOptions options = new SortOptions();
+        options.maxRunRows = 2;
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), column, options);
+        assertEquals(List.of("5", "1", "3", "6", "2", "4"), readAll(outCsv).stream().map(r -> r.get(0)).toList());
+
+        column.nullsFirst = true;
+        column.asc = true;
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), column, options);
+        assertEquals(List.of("2", "4", "3", "6", "1", "5"), readAll(outCsv).stream().map(r -> r.get(0)).toList());
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void ambiguousDates() throws IOException {
+        // 25/12/2023 only parses as dd/MM/yyyy, so the other days are read the same way, whatever the threads.
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        Files.writeString(inCsv, "id,day\r\n1,02/03/2024\r\n2,25/12/2023\r\n3,10/02/2024\r\n4,\r\n5,01/01/2024\r\n");
+        List<String> expected = List.of("2", "5", "3", "1", "4");
+
+        for (int parallelism : new int[]{1, 4}) {
+            SortOptions options = new SortOptions();
+            options.parallelism = parallelism;
+            options.maxRunRows = 2;
+            Path outCsv = Files.createTempFile("sort-out", ".csv");
+            new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), new SortColumn(1, Type.DATE, true), options);
+            assertEquals(expected, readAll(outCsv).stream().map(r -> r.get(0)).toList());
+            new File(outCsv.toString()).deleteOnExit();
+        }
+
+        // An explicit format wins over the detected one.
+        SortColumn column = new SortColumn(1, Type.DATE, true);
+        column.dateFormat = "MM/dd/yyyy";
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), column);
+        assertEquals(List.of("5", "1", "3", "2", "4"), readAll(outCsv).stream().map(r -> r.get(0)).toList());
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void detectedTypeSort() throws IOException {
+        // The first row looks like an integer column, later values are decimals.
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        Files.writeString(inCsv, "id,amount\r\n1,10\r\n2,9.5\r\n3,\r\n4,-3\r\n5,100\r\n");
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), 1, true);
+        assertEquals(List.of("4", "2", "1", "5", "3"), readAll(outCsv).stream().map(r -> r.get(0)).toList());
+
+        // Text among the numbers: the column is sorted as strings.
+        Files.writeString(inCsv, "id,amount\r\n1,10\r\n2,n/a\r\n3,9.5\r\n4,-3\r\n5,100\r\n");
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), 1, true);
+        assertEquals(List.of("4", "1", "5", "3", "2"), readAll(outCsv).stream().map(r -> r.get(0)).toList());
+
+        // Text after the sampled rows: numbers by value, then the text.
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(inCsv))) {
+            writer.print("id,amount\r\n");
+            for (int i = 0; i < 2000; i++) {
+                writer.print(i + "," + (i == 1500 ? "n/a" : String.valueOf(2000 - i)) + "\r\n");
+            }
+        }
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), 1, false, 300);
+        List<String> ids = readAll(outCsv).stream().map(r -> r.get(0)).toList();
+        assertEquals(2000, ids.size());
+        assertEquals("0", ids.get(0));
+        assertEquals("1999", ids.get(1998));
+        assertEquals("1500", ids.get(1999));
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void autoTypeKey() throws IOException {
+        // Integers in the sampled rows, then values that aren't integers.
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(inCsv))) {
+            writer.print("id,amount\r\n");
+            for (int i = 0; i < 2000; i++) {
+                writer.print(i + "," + (i == 1200 ? "1.5" : i == 1500 ? "abc" : String.valueOf(2000 - i)) + "\r\n");
+            }
+        }
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+
+        // The key of the sort dialog with the "Auto" type: the values that aren't integers are kept, after the numbers.
+        SortColumn auto = new SortColumn(1, null, true);
+        auto.nullsFirst = true;
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), auto, new SortOptions());
+        assertEquals(Type.INT, auto.type);
+        assertTrue(auto.unparsedAsString);
+        List<String> ids = readAll(outCsv).stream().map(r -> r.get(0)).toList();
+        assertEquals("1999", ids.get(0));
+        assertEquals(List.of("1200", "1500"), ids.subList(1998, 2000));
+
+        // An explicit type treats them as empty values.
+        SortColumn typed = new SortColumn(1, Type.INT, true);
+        typed.nullsFirst = true;
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), typed, new SortOptions());
+        ids = readAll(outCsv).stream().map(r -> r.get(0)).toList();
+        assertEquals(List.of("1200", "1500"), ids.subList(0, 2));
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void rawRowsCopied() throws IOException {
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        Files.writeString(inCsv, "id,note\r\n3,\"multi\nline, \"\"quoted\"\"\"\r\n1,  spaced  \n2,plain\r\n");
+
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        SortOptions options = new SortOptions();
+        options.maxRunRows = 2;
+        new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), new SortColumn(0), options);
+        assertEquals("id,note\r\n1,  spaced  \r\n2,plain\r\n3,\"multi\nline, \"\"quoted\"\"\"\r\n", Files.readString(outCsv));
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void utf16Sort() throws IOException {
+        Path inCsv = Files.createTempFile("sort-in", ".csv");
+        Files.writeString(inCsv, "id,name\r\n2,\"b, é\"\r\n3,a\r\n1,c\r\n", StandardCharsets.UTF_16);
+
+        Path outCsv = Files.createTempFile("sort-out", ".csv");
+        CsvConfig config = new CsvConfig();
+        config.encode = "UTF-16";
+        SortOptions options = new SortOptions();
+        options.maxRunRows = 2;
+        new MergeSort().sort(inCsv.toString(), config, outCsv.toString(), new SortColumn(1), options);
+        assertEquals("id,name\r\n3,a\r\n2,\"b, é\"\r\n1,c\r\n", Files.readString(outCsv, StandardCharsets.UTF_16));
+
+        new File(outCsv.toString()).deleteOnExit();
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
     @Test
     @Disabled("This test is ignored because performance test")
     void performance() throws IOException {
@@ -49,4 +534,46 @@ public class MergeSortTest {
         File f = new File(outCsv.toString());
         f.deleteOnExit();
     }
+
+    @Test
+    @Disabled("This test is ignored because performance test")
+    void runStrategyBenchmark() throws IOException {
+        Path inCsv = createFile(2_000_000);
+        for (int round = 0; round < 3; round++) {
+            for (RunStrategy strategy : RunStrategy.values()) {
+                SortOptions options = new SortOptions();
+                options.memoryBudget = 32L * 1024 * 1024;
+                options.runStrategy = strategy;
+                Path outCsv = Files.createTempFile("sort-out", ".csv");
+                long start = System.nanoTime();
+                new MergeSort().sort(inCsv.toString(), new CsvConfig(), outCsv.toString(), new SortColumn(3, Type.DOUBLE, true), options);
+                System.out.printf("%s: %d ms%n", strategy, (System.nanoTime() - start) / 1_000_000);
+                new File(outCsv.toString()).deleteOnExit();
+            }
+        }
+        new File(inCsv.toString()).deleteOnExit();
+    }
+
+    static Path createFile(int rows) throws IOException {
+        Path csvFile = Files.createTempFile("sort-in", ".csv");
+        Random random = new Random(7);
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csvFile))) {
+            writer.print("id,name,amount,price,day\r\n");
+            for (int i = 0; i < rows; i++) {
+                writer.print(i + ",\"name " + random.nextInt(1000) + "\"," + (random.nextInt(2000) - 1000) + ","
+                        + (random.nextInt(100000) / 100.0) + ",2024-" + (1 + random.nextInt(12)) / 10 + (1 + random.nextInt(12)) % 10
+                        + "-1" + random.nextInt(10) + "\r\n");
+            }
+        }
+        return csvFile;
+    }
+
+    static List<CSVRecord> readAll(Path csvFile) throws IOException {
+        CsvConfig config = new CsvConfig();
+        config.bufferedLines = 1000000;
+        CsvReader reader = new CsvReader(csvFile.toString(), config);
+        List<CSVRecord> data = reader.readLines();
+        reader.close();
+        return data;
+    }
 }
@@ -0,0 +1,85 @@
+package lehoai.csvtitan;
+
+import lehoai.csvtitan.service.CsvReader;
+import lehoai.csvtitan.service.MetaCache;
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.core.Type;
+import lehoai.csvtitan.service.parse.RowIndex;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetaCacheTest {
+
+    @Test
+    void reuseAcrossReaders() throws IOException {
+        Path cacheDir = Files.createTempDirectory("cache");
+        Path csvFile = createFile(3000);
+        MetaCache cache = new MetaCache(cacheDir, MetaCache.DEFAULT_MAX_SIZE, true);
+
+        CsvReader first = new CsvReader(csvFile.toString(), new CsvConfig());
+        first.setMetaCache(cache);
+        first.readMeta();
+        assertNull(first.getRowIndex());
+        RowIndex index = first.buildIndex(2);
+        assertEquals(3000, index.getRowCount());
+        assertEquals(0, first.getColumnStats()[1].emptyCount);
+        first.close();
+
+        CsvReader second = new CsvReader(csvFile.toString(), new CsvConfig());
+        second.setMetaCache(cache);
+        second.readMeta();
+        assertNotNull(second.getRowIndex());
+        assertEquals(3000, second.getRowIndex().getRowCount());
+        assertArrayEquals(index.getOffsets(), second.getRowIndex().getOffsets());
+        assertEquals(Type.INT, second.getSchemas()[0].type);
+        assertEquals(4, second.getColumnStats()[1].maxLength);
+        second.seek(2500);
+        assertEquals("2500", second.readLine().get(0));
+        second.close();
+
+        // A modified file must not reuse the entry
+        Files.writeString(csvFile, "id,name\n1,a\n");
+        Files.setLastModifiedTime(csvFile, FileTime.fromMillis(System.currentTimeMillis() + 5000));
+        assertNull(cache.load(csvFile.toString(), new CsvConfig()));
+
+        new File(csvFile.toString()).deleteOnExit();
+    }
+
+    @Test
+    void evictOldEntries() throws IOException {
+        Path cacheDir = Files.createTempDirectory("cache");
+        MetaCache cache = new MetaCache(cacheDir, 1, false);
+        Path csvFile = createFile(10);
+
+        CsvReader reader = new CsvReader(csvFile.toString(), new CsvConfig());
+        reader.setMetaCache(cache);
+        reader.readMeta();
+        reader.buildIndex(1);
+        reader.close();
+
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            assertEquals(0, files.count());
+        }
+        new File(csvFile.toString()).deleteOnExit();
+    }
+
+    private static Path createFile(int rows) throws IOException {
+        Path csvFile = Files.createTempFile("cached", ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csvFile))) {
+            writer.print("id,name\n");
+            for (int i = 0; i < rows; i++) {
+                writer.print(i + ",n" + (i % 1000) + "\n");
+            }
+        }
+        return csvFile;
+    }
+}
@@ -0,0 +1,47 @@
+package lehoai.csvtitan;
+
+import lehoai.csvtitan.service.CsvReader;
+import lehoai.csvtitan.service.PagedRowSource;
+import lehoai.csvtitan.service.core.CsvConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PagedRowSourceTest {
+
+    @Test
+    void randomAccess() throws IOException {
+        Path csvFile = Files.createTempFile("paged", ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csvFile))) {
+            writer.print("id,comment\n");
+            for (int i = 0; i < 12345; i++) {
+                writer.print(i + ",\"row\n" + i + "\"\n");
+            }
+        }
+        CsvReader reader = new CsvReader(csvFile.toString(), new CsvConfig());
+        reader.readMeta();
+
+        try (PagedRowSource source = new PagedRowSource(csvFile.toString(), new CsvConfig(), reader.buildIndex(4), 4)) {
+            assertEquals(12345, source.size());
+            assertEquals(12245, source.lastPageStart(100));
+            assertEquals("0", source.get(0).get(0));
+            assertEquals("row\n12344", source.get(12344).get(1));
+            // Scroll forward then backward over more pages than the cache holds
+            for (int i = 0; i < 12345; i += 97) {
+                assertEquals(String.valueOf(i), source.get(i).get(0));
+            }
+            for (int i = 12344; i >= 0; i -= 131) {
+                assertEquals(String.valueOf(i), source.get(i).get(0));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> source.get(12345));
+        }
+        reader.close();
+        new File(csvFile.toString()).deleteOnExit();
+    }
+}
@@ -0,0 +1,92 @@
+package lehoai.csvtitan;
+
+import lehoai.csvtitan.service.MappedCsvReader;
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import lehoai.csvtitan.service.parse.ParallelCsvScanner;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelCsvScannerTest {
+
+    private static final int ROWS = 20000;
+
+    @Test
+    void scanQuotedMultiLineFile() throws IOException {
+        Path csv = createFile();
+        MappedCsvReader reader = new MappedCsvReader(csv.toString(), new CsvConfig());
+        reader.readMeta();
+        MappedCsv mappedCsv = reader.getMappedCsv();
+
+        ParallelCsvScanner scanner = new ParallelCsvScanner(mappedCsv, reader.getDataStart(), 8, 1024);
+        assertTrue(scanner.boundaries().length > 2);
+        assertEquals(ROWS, scanner.count());
+
+        AtomicLong sum = new AtomicLong();
+        scanner.forEach(row -> sum.addAndGet(Long.parseLong(row.get(0))));
+        assertEquals((long) ROWS * (ROWS - 1) / 2, sum.get());
+
+        List<String> comments = new ArrayList<>();
+        scanner.forEachOrdered(row -> comments.add(row.get(2)));
+        assertEquals(ROWS, comments.size());
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(comment(i), comments.get(i));
+        }
+        reader.close();
+        new File(csv.toString()).deleteOnExit();
+    }
+
+    @Test
+    void failureAfterQueueIsFull() throws IOException {
+        Path csv = createFile();
+        MappedCsvReader reader = new MappedCsvReader(csv.toString(), new CsvConfig());
+        reader.readMeta();
+        MappedCsv mappedCsv = reader.getMappedCsv();
+
+        // One range of many batches: the producer fills its queue while the consumer sleeps on the first row,
+        // then fails on the unmapped file once the consumer takes a batch and the queue is full again.
+        ParallelCsvScanner scanner = new ParallelCsvScanner(mappedCsv, reader.getDataStart(), 1, Long.MAX_VALUE);
+        AtomicLong count = new AtomicLong();
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> scanner.forEachOrdered(row -> {
+                if (count.getAndIncrement() == 0) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    mappedCsv.close();
+                }
+            }));
+            assertEquals("Parallel scan failed", e.getMessage());
+        });
+        assertTrue(count.get() < ROWS);
+        new File(csv.toString()).deleteOnExit();
+    }
+
+    private static Path createFile() throws IOException {
+        Path csv = Files.createTempFile("parallel", ".csv");
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv))) {
+            writer.print("id,name,comment\r\n");
+            for (int i = 0; i < ROWS; i++) {
+                writer.print(i + ",name" + i + ",\"" + comment(i).replace("\"", "\"\"") + "\"\r\n");
+            }
+        }
+        return csv;
+    }
+
+    private static String comment(int i) {
+        return i % 3 == 0 ? "line\none, \"quoted\"\nline three" : "plain " + i;
+    }
+}
@@ -0,0 +1,67 @@
+package lehoai.csvtitan;
+
+import lehoai.csvtitan.service.core.CsvConfig;
+import lehoai.csvtitan.service.parse.MappedCsv;
+import lehoai.csvtitan.service.parse.StructuralScanner;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StructuralScannerTest {
+
+    /**
+     * Compares the vectorized scanner with the scalar one. It only runs when the tests are started with
+     * {@code mvn -Pvector test}, which adds the vector sources and the {@code jdk.incubator.vector} module.
+     */
+    @Test
+    void sameBitmapsAsScalar() throws IOException {
+        StructuralScanner vector = StructuralScanner.create((byte) ',', (byte) '"');
+        Assumptions.assumeTrue(vector.getClass().getSimpleName().equals("VectorStructuralScanner"),
+                "the vector scanner is only available with the vector profile");
+        byte[] data = new byte[10000];
+        Random random = new Random(42);
+        byte[] alphabet = "ab,\"\r\n;".getBytes();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = alphabet[random.nextInt(alphabet.length)];
+        }
+        Path file = Files.createTempFile("scanner", ".csv");
+        Files.write(file, data);
+
+        try (MappedCsv csv = new MappedCsv(file.toString(), new CsvConfig())) {
+            StructuralScanner scalar = StructuralScanner.scalar((byte) ',', (byte) '"');
+            long[] expected = new long[2];
+            long[] actual = new long[2];
+            for (long block = 0; block < csv.size(); block += StructuralScanner.BLOCK_SIZE) {
+                scalar.scanBlock(csv.segment(), block, csv.size(), expected);
+                vector.scanBlock(csv.segment(), block, csv.size(), actual);
+                assertArrayEquals(expected, actual, "block at " + block);
+            }
+
+        }
+        new File(file.toString()).deleteOnExit();
+    }
+
+    @Test
+    void bitmapsOfKnownBlock() throws IOException {
+        Path file = Files.createTempFile("scanner", ".csv");
+        Files.writeString(file, "a,\"b\"\r\nc,d");
+
+        try (MappedCsv csv = new MappedCsv(file.toString(), new CsvConfig())) {
+            long[] masks = new long[2];
+            csv.scanner().scanBlock(csv.segment(), 0, csv.size(), masks);
+            assertEquals(0b1_0110_0010L, masks[StructuralScanner.FIELD_END]);
+            assertEquals(0b1_0100L, masks[StructuralScanner.QUOTE]);
+
+            csv.scanner().scanBlock(csv.segment(), 0, 4, masks);
+            assertEquals(0b10L, masks[StructuralScanner.FIELD_END]);
+        }
+        new File(file.toString()).deleteOnExit();
+    }
+}